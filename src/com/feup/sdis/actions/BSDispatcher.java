@@ -1,15 +1,15 @@
 package com.feup.sdis.actions;
 
 import com.feup.sdis.exceptions.MessageError;
+import com.feup.sdis.peer.ThreadPools;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class BSDispatcher implements Dispatcher {
 
-    public static final ExecutorService servicePool = Executors.newCachedThreadPool();
+    public static final ExecutorService servicePool = ThreadPools.newTaskPool();
 
     public String processMsg(String msg) throws MessageError {
         final String[] args = msg.split(",");
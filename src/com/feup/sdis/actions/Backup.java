@@ -1,8 +1,13 @@
 package com.feup.sdis.actions;
 
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
 import com.feup.sdis.model.BackupFileInfo;
+import com.feup.sdis.model.ChunkBody;
 import com.feup.sdis.model.Store;
+import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.Constants;
+import com.feup.sdis.peer.SendWindow;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -11,8 +16,8 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import javax.naming.directory.InvalidAttributeValueException;
@@ -22,7 +27,7 @@ public class Backup extends Action {
     private BackupFileInfo file;
     private String filepath;
     private int repDegree;
-    private ArrayList<byte[]> chunks;
+    private ArrayList<ChunkBody> chunks;
 
     public Backup(String[] args) {
 
@@ -45,12 +50,27 @@ public class Backup extends Action {
             return e.getMessage();
         }
 
-        List<Future<String>> backupCalls = new ArrayList<>();
+        // The peers assigned to every chunk and replica are found in a single sweep of the ring
+        final UUID[][] keys = new UUID[this.repDegree][this.file.getNChunks()];
+        for (int i = 0; i < this.repDegree; i++)
+            for (int j = 0; j < this.file.getNChunks(); j++)
+                keys[i][j] = Chord.chordInstance.generateKey(StoredChunkInfo.getChunkID(file.getfileID(), j), i);
+        final Map<UUID, SocketAddress> assignedPeers = Chord.chordInstance.lookupMany(
+                Arrays.stream(keys).flatMap(Arrays::stream).collect(Collectors.toList()));
+
+        // The RPCs wait on the network instead of on a thread each, a window of them at a time per peer
+        final Map<String, SendWindow> windows = new HashMap<>();
+        List<CompletableFuture<String>> backupCalls = new ArrayList<>();
         for (int i = 0; i < this.repDegree; i++) {
             for (int j = 0; j < this.file.getNChunks(); j++) {
 
-                backupCalls.add(BSDispatcher.servicePool.submit(new ChunkBackup(file.getfileID(), j, i,
-                        this.chunks.get(j), this.file.getNChunks(), this.repDegree, file.getOriginalFilename())));
+                final SocketAddress assigned = assignedPeers.get(keys[i][j]);
+                final ChunkBackup chunkBackup = new ChunkBackup(file.getfileID(), j, i,
+                        this.chunks.get(j), this.file.getNChunks(), this.repDegree, file.getOriginalFilename());
+                final String peer = assigned == null ? "" : assigned.getIp() + ":" + assigned.getPort();
+
+                backupCalls.add(windows.computeIfAbsent(peer, k -> new SendWindow(Constants.BACKUP_WINDOW))
+                        .submit(() -> chunkBackup.processAsync(assigned)));
             }
         }
 
@@ -58,8 +78,8 @@ public class Backup extends Action {
         List<String> backupReturnCodes = backupCalls.stream()
                 .map(backupCall -> {
                     try {
-                        return backupCall.get();
-                    } catch (InterruptedException | ExecutionException e) {
+                        return backupCall.join();
+                    } catch (CompletionException e) {
                         e.printStackTrace();
                     }
 
@@ -128,18 +148,15 @@ public class Backup extends Action {
 
     public int splitChunks(File file) throws IOException {
 
-        byte[] fileData = Files.readAllBytes(file.toPath());
-        int nChunks = (int) Math.ceil(((double) file.length()) / Constants.BLOCK_SIZE);
+        long fileLength = file.length();
+        int nChunks = (int) Math.ceil(((double) fileLength) / Constants.BLOCK_SIZE);
 
+        // Chunks are regions of the original file, only read when they are sent
         for (int i = 0; i < nChunks; i++) {
-            byte[] chunk;
-
-            if (i == nChunks - 1)
-                chunk = Arrays.copyOfRange(fileData, i * Constants.BLOCK_SIZE, fileData.length);
-            else
-                chunk = Arrays.copyOfRange(fileData, i * Constants.BLOCK_SIZE, (i + 1) * Constants.BLOCK_SIZE);
+            long offset = (long) i * Constants.BLOCK_SIZE;
+            int length = (int) Math.min(Constants.BLOCK_SIZE, fileLength - offset);
 
-            this.chunks.add(chunk);
+            this.chunks.add(ChunkBody.of(file.toPath(), offset, length));
         }
 
         return nChunks;
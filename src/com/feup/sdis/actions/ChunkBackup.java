@@ -7,26 +7,28 @@ import com.feup.sdis.messages.requests.BackupRequest;
 import com.feup.sdis.messages.requests.BackupLookupRequest;
 import com.feup.sdis.messages.responses.BackupResponse;
 import com.feup.sdis.messages.responses.BackupLookupResponse;
+import com.feup.sdis.model.ChunkBody;
 import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 public class ChunkBackup extends Action implements Callable<String> {
 
     String fileID;
     int repID;
     int chunkNo;
-    byte[] chunkData;
+    ChunkBody chunkBody;
     private final int nChunks;
     private final int replDegree;
     private final String originalFilename;
 
-    public ChunkBackup(String fileID, int chunkNo, int repID, byte[] chunkData, int nChunks, int replDegree, String originalFilename) {
+    public ChunkBackup(String fileID, int chunkNo, int repID, ChunkBody chunkBody, int nChunks, int replDegree, String originalFilename) {
 
         this.fileID = fileID;
         this.chunkNo = chunkNo;
-        this.chunkData = chunkData;
+        this.chunkBody = chunkBody;
         this.repID = repID;
         this.nChunks = nChunks;
         this.replDegree = replDegree;
@@ -35,33 +37,62 @@ public class ChunkBackup extends Action implements Callable<String> {
 
     @Override
     String process() {
+        return this.processAsync().join();
+    }
+
+    /**
+     * Completes with null if the chunk was stored, otherwise with the reason it wasn't
+     */
+    public CompletableFuture<String> processAsync() {
 
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
-        final SocketAddress addressInfo = Chord.chordInstance.lookup(chunkID, repID);
-        final BackupLookupRequest lookupRequest = new BackupLookupRequest(fileID, chunkNo, repID, addressInfo, this.chunkData.length, false);
-        final BackupLookupResponse lookupRequestAnswer = MessageHandler.sendMessage(lookupRequest, lookupRequest.getConnection());
-
-        if(lookupRequestAnswer == null || lookupRequestAnswer.getStatus() != Status.SUCCESS) {
-            return "Failed to lookup peer for " + chunkNo + " of file " + fileID + " with rep " + repID + (lookupRequestAnswer == null ? "" :
-                    " with status " + lookupRequestAnswer.getStatus());
-        }
-
-        final BackupRequest backupRequest = new BackupRequest(this.fileID, chunkNo, this.replDegree, this.chunkData,
-                lookupRequestAnswer.getAddress(), nChunks, originalFilename, Peer.addressInfo);
-
-        final BackupResponse backupRequestAnswer = MessageHandler.sendMessage(backupRequest, backupRequest.getConnection());
-        if (backupRequestAnswer != null && backupRequestAnswer.getStatus() == Status.SUCCESS) {
-            System.out.println("Successfully stored chunk " + chunkNo + " with rep " + repID + " in " + lookupRequestAnswer.getAddress());
-        }
-        else{
-            return "Failed to stored chunk " + chunkNo + " with rep " + repID;
-        }
-
-        return null;
+
+        return Chord.chordInstance.lookupAsync(chunkID, repID).thenCompose(this::processAsync);
+    }
+
+    /**
+     * Same as processAsync, for when the peer assigned to the chunk was already looked up
+     */
+    public CompletableFuture<String> processAsync(SocketAddress addressInfo) {
+
+        return this.processAsync(addressInfo, true);
+    }
+
+    private CompletableFuture<String> processAsync(SocketAddress addressInfo, boolean cached) {
+
+        final BackupLookupRequest lookupRequest = new BackupLookupRequest(fileID, chunkNo, repID, addressInfo, this.chunkBody.getLength(), false, cached);
+
+        return MessageHandler.<BackupLookupResponse>sendMessageAsync(lookupRequest, lookupRequest.getConnection()).thenCompose(lookupRequestAnswer -> {
+            // The peer may have come from the lookup cache and no longer own the key, so look it up again through the ring
+            if (lookupRequestAnswer != null && lookupRequestAnswer.getStatus() == Status.NOT_RESPONSIBLE) {
+                final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
+                Chord.chordInstance.invalidateLookup(chunkID, repID);
+                return Chord.chordInstance.lookupAsync(chunkID, repID).thenCompose(assigned -> this.processAsync(assigned, false));
+            }
+
+            if(lookupRequestAnswer == null || lookupRequestAnswer.getStatus() != Status.SUCCESS) {
+                return CompletableFuture.completedFuture("Failed to lookup peer for " + chunkNo + " of file " + fileID + " with rep " + repID + (lookupRequestAnswer == null ? "" :
+                        " with status " + lookupRequestAnswer.getStatus()));
+            }
+
+            final BackupRequest backupRequest = new BackupRequest(this.fileID, chunkNo, this.replDegree, this.chunkBody,
+                    lookupRequestAnswer.getAddress(), nChunks, originalFilename, Peer.addressInfo);
+
+            return MessageHandler.<BackupResponse>sendMessageAsync(backupRequest, backupRequest.getConnection()).thenApply(backupRequestAnswer -> {
+                if (backupRequestAnswer != null && backupRequestAnswer.getStatus() == Status.SUCCESS) {
+                    System.out.println("Successfully stored chunk " + chunkNo + " with rep " + repID + " in " + lookupRequestAnswer.getAddress());
+                }
+                else{
+                    return "Failed to stored chunk " + chunkNo + " with rep " + repID;
+                }
+
+                return null;
+            });
+        });
     }
 
     @Override
     public String call() {
         return this.process();
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,12 @@
 package com.feup.sdis.actions;
 
-import java.util.concurrent.Future;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
@@ -16,8 +22,6 @@ import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.Constants;
 import com.feup.sdis.peer.MessageHandler;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 
 public class Delete extends Action {
     private final String fileID;
@@ -39,85 +43,109 @@ public class Delete extends Action {
         final int nChunks = response.getnChunks();
 
         // remove BackupFileInfo from the peer that initiated the backup
-        Callable<Boolean> deleteFileInfoReq = () -> {
+        Supplier<CompletableFuture<Boolean>> deleteFileInfoReq = () -> {
             final SocketAddress backupInitiatorPeer = response.getInitiatorPeer();
             final DeleteFileInfo req = new DeleteFileInfo(fileID);
-            final DeleteFileInfoResponse res = MessageHandler.sendMessage(req, backupInitiatorPeer);
-
-            if (res == null) {
-                System.out.println("Error removing file " + fileID + " from initiator peer " + backupInitiatorPeer);
-                return false;
-            }
+            return MessageHandler.<DeleteFileInfoResponse>sendMessageAsync(req, backupInitiatorPeer).thenApply(res -> {
+                if (res == null) {
+                    System.out.println("Error removing file " + fileID + " from initiator peer " + backupInitiatorPeer);
+                    return false;
+                }
 
-            return true;
+                return true;
+            });
         };
         sendRequest(deleteFileInfoReq);
 
+        // The peers assigned to every chunk and replica are found in a single sweep of the ring
+        final UUID[][] keys = new UUID[nChunks][desiredRepl];
+        for (int chunkNo = 0; chunkNo < nChunks; chunkNo++)
+            for (int replDegree = 0; replDegree < desiredRepl; replDegree++)
+                keys[chunkNo][replDegree] = Chord.chordInstance.generateKey(StoredChunkInfo.getChunkID(fileID, chunkNo), replDegree);
+        final Map<UUID, SocketAddress> assignedPeers = Chord.chordInstance.lookupMany(
+                Arrays.stream(keys).flatMap(Arrays::stream).collect(Collectors.toList()));
+
         for (int chunkNo = 0; chunkNo < nChunks; chunkNo++) {
             for (int replDegree = 0; replDegree < desiredRepl; replDegree++) {
-                deleteChunk(chunkNo, replDegree, fileID);
+                deleteChunk(chunkNo, replDegree, fileID, assignedPeers.get(keys[chunkNo][replDegree]));
             }
         }
 
         return "Successfully requested file deletion";
     }
 
-    public static Future<Boolean> deleteChunk(int chunkNumber, int replNo, String fileID) {
+    public static CompletableFuture<Boolean> deleteChunk(int chunkNumber, int replNo, String fileID) {
+        return deleteChunk(chunkNumber, replNo, fileID, null);
+    }
 
-        Callable<Boolean> r = () -> {
-            final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNumber);
+    /**
+     * The peer assigned to the chunk may be given if it was already looked up, retries look it up again
+     */
+    public static CompletableFuture<Boolean> deleteChunk(int chunkNumber, int replNo, String fileID, SocketAddress assigned) {
 
-            final SocketAddress addressInfo = Chord.chordInstance.lookup(chunkID, replNo);
+        final AtomicReference<SocketAddress> knownAddress = new AtomicReference<>(assigned);
+        Supplier<CompletableFuture<Boolean>> r = () -> {
+            final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNumber);
             final DeleteRequest deleteRequest = new DeleteRequest(fileID, chunkNumber, replNo);
-            System.out.println(
-                    "Requesting DELETE (" + fileID + "," + chunkNumber + "," + replNo + ") to peer " + addressInfo);
-            final DeleteResponse deleteResponse = MessageHandler.sendMessage(deleteRequest, addressInfo);
-
-            if (deleteResponse == null) {
-                System.out.println("Could not read DELETE response for chunk " + chunkNumber + ", added to retry queue");
-                return false;
-            }
-
-            if (deleteResponse.getStatus() == Status.SUCCESS) {
-                System.out.println("Deleted chunk " + chunkNumber + " from " + addressInfo.toString() + ", replNo=" + replNo);
-                return true;
-            }
-
-            switch (deleteResponse.getStatus()) {
-                case FILE_NOT_FOUND:
-                    System.out.println("Chunk " + chunkNumber + " was not present in " + addressInfo.toString());
-                    break;
-                case CONNECTION_ERROR:
-                    System.out.println("Connection error for chunk " + chunkID + ", replNo=" + replNo);
-                    break;
-                case FILE_NOT_DELETED:
-                    System.out.println("Could not delete chunk " + chunkID + ", replNo=" + replNo);
-                    return true;
-                default:
-                    System.out.println("Could not delete chunk " + chunkNumber + " from " + addressInfo + ", got error "
-                            + deleteResponse.getStatus());
-            }
-
-            System.out.println("Adding request " + deleteRequest.toString() + " to retry queue");
-            return false;
+            final SocketAddress known = knownAddress.getAndSet(null);
+            final CompletableFuture<SocketAddress> lookup = known != null ? CompletableFuture.completedFuture(known)
+                    : Chord.chordInstance.lookupAsync(chunkID, replNo);
+
+            return lookup.thenCompose(addressInfo -> {
+                System.out.println(
+                        "Requesting DELETE (" + fileID + "," + chunkNumber + "," + replNo + ") to peer " + addressInfo);
+                return MessageHandler.<DeleteResponse>sendMessageAsync(deleteRequest, addressInfo).thenApply(deleteResponse -> {
+                    if (deleteResponse == null) {
+                        System.out.println("Could not read DELETE response for chunk " + chunkNumber + ", added to retry queue");
+                        Chord.chordInstance.invalidateLookup(chunkID, replNo);
+                        return false;
+                    }
+
+                    if (deleteResponse.getStatus() == Status.SUCCESS) {
+                        System.out.println("Deleted chunk " + chunkNumber + " from " + addressInfo.toString() + ", replNo=" + replNo);
+                        return true;
+                    }
+
+                    // The peer may have come from the lookup cache, the retry looks it up through the ring
+                    Chord.chordInstance.invalidateLookup(chunkID, replNo);
+
+                    switch (deleteResponse.getStatus()) {
+                        case FILE_NOT_FOUND:
+                            System.out.println("Chunk " + chunkNumber + " was not present in " + addressInfo.toString());
+                            break;
+                        case CONNECTION_ERROR:
+                            System.out.println("Connection error for chunk " + chunkID + ", replNo=" + replNo);
+                            break;
+                        case FILE_NOT_DELETED:
+                            System.out.println("Could not delete chunk " + chunkID + ", replNo=" + replNo);
+                            return true;
+                        default:
+                            System.out.println("Could not delete chunk " + chunkNumber + " from " + addressInfo + ", got error "
+                                    + deleteResponse.getStatus());
+                    }
+
+                    System.out.println("Adding request " + deleteRequest.toString() + " to retry queue");
+                    return false;
+                });
+            });
         };
 
         return sendRequest(r);
     }
 
-    private static Future<Boolean> sendRequest(Callable<Boolean> r) {
-        Future<Boolean> receivedAnswer = BSDispatcher.servicePool.submit(r);
-        BSDispatcher.servicePool.execute(() -> {
-            try {
-                Boolean answer = receivedAnswer.get();
-                if (!answer) {
-                    System.out.println("> DELETE: adding request to retry queue");
-                    Store.instance().addRequestToRetryQueue(new RequestRetryInfo(r));
-                }
-            } catch (InterruptedException | ExecutionException e) {
+    private static CompletableFuture<Boolean> sendRequest(Supplier<CompletableFuture<Boolean>> r) {
+        return r.get().handle((answer, e) -> {
+            if (e != null)
                 e.printStackTrace();
+
+            if (answer == null || !answer) {
+                System.out.println("> DELETE: adding request to retry queue");
+                // Retries are rare and run from the retry queue's own pool, so they can block
+                Store.instance().addRequestToRetryQueue(new RequestRetryInfo(() -> r.get().join()));
+                return false;
             }
+
+            return true;
         });
-        return receivedAnswer;
     }
 }
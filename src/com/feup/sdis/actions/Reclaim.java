@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import com.feup.sdis.model.ChunkBody;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.Peer;
@@ -67,7 +68,7 @@ public class Reclaim extends Action {
                 deleteCall.get();
                 System.out.println("> RECLAIM: Backing up chunk " + chunkID + " rep " + currRepDegree);
                 var chunkBackup = new ChunkBackup(chunkInfo.getFileID(), chunkInfo.getChunkNo(),
-                                                        currRepDegree, chunkData, chunkInfo.getnChunks(),
+                                                        currRepDegree, ChunkBody.of(chunkData), chunkInfo.getnChunks(),
                                                         chunkInfo.getDesiredReplicationDegree(), chunkInfo.getOriginalFilename());
                 BSDispatcher.servicePool.submit(chunkBackup).get();
             } catch (InterruptedException | ExecutionException e1) {
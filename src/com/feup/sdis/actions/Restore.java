@@ -1,6 +1,7 @@
 package com.feup.sdis.actions;
 
 import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.LookupStats;
 import com.feup.sdis.chord.SocketAddress;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.ChunkLookupRequest;
@@ -15,9 +16,17 @@ import com.feup.sdis.peer.Constants;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class Restore extends Action {
     private final String fileID;
@@ -39,68 +48,149 @@ public class Restore extends Action {
         System.out.println("Found file  " + response.getOriginalFilename() +
                 " with replication degree " + response.getReplDegree() + " and " + response.getnChunks() + " chunks");
 
+        // Chunks are written at their offset as they arrive, the file is only renamed once complete
+        final Path restoredPath = Paths.get(Constants.restoredFolder + response.getOriginalFilename());
+        final Path partialPath = Paths.get(restoredPath + ".part");
+        final FileChannel output;
+        try {
+            output = FileChannel.open(partialPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Failed to store file " + fileID;
+        }
+
+        // The first replica of every chunk is found in a single sweep of the ring, the others only if it fails
+        final UUID[] keys = new UUID[response.getnChunks()];
+        for (int i = 0; i < response.getnChunks(); i++)
+            keys[i] = Chord.chordInstance.generateKey(StoredChunkInfo.getChunkID(fileID, i), 0);
+        final Map<UUID, SocketAddress> assignedPeers = Chord.chordInstance.lookupMany(Arrays.asList(keys));
+
+        // Every chunk is requested at once and written from the callback that receives it
         for (int i = 0; i < response.getnChunks(); i++) {
             int chunkNo = i;
-            BSDispatcher.servicePool.execute(() -> {
-                final ChunkResponse chunk = getChunk(fileID, chunkNo, response.getReplDegree());
+            getChunkAsync(fileID, chunkNo, response.getReplDegree(), assignedPeers.get(keys[i])).thenAccept(chunk -> {
+                boolean finished;
                 if (chunk == null) {
                     System.out.println("Couldn't retrieve chunk " + chunkNo + " of file " + fileID);
-                    return;
-                }
-
-                file.getRestoredChunks().put(chunkNo, chunk.getData());
-                if (file.isFullyRestored()) {
+                    finished = file.markFailed();
+                } else {
                     try {
-                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                        for (byte[] body : file.getRestoredChunks().values())
-                            outputStream.write(body);
-                        FileOutputStream fos = new FileOutputStream
-                                (Constants.restoredFolder + response.getOriginalFilename());
-                        fos.write(outputStream.toByteArray());
-                        fos.close();
+                        chunk.getBody().writeTo(output, (long) chunkNo * Constants.BLOCK_SIZE);
+                        finished = file.markRestored(chunkNo);
                     } catch (IOException e) {
                         e.printStackTrace();
-                        System.out.println("Failed to store file " + fileID);
+                        System.out.println("Failed to store chunk " + chunkNo + " of file " + fileID);
+                        finished = file.markFailed();
+                    } finally {
+                        chunk.getBody().discard();
                     }
                 }
+
+                if (finished)
+                    finishRestore(file, output, partialPath, restoredPath);
             });
         }
         return "Restored file";
     }
 
-    public static ChunkResponse getChunk(String fileID, int chunkNo, int replDegree) {
-        for (int replicator = 0; replicator < replDegree; replicator++) {
-            String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
+    private static void finishRestore(RestoredFileInfo file, FileChannel output, Path partialPath, Path restoredPath) {
+        try {
+            output.close();
+            if (file.isFullyRestored())
+                Files.move(partialPath, restoredPath, StandardCopyOption.REPLACE_EXISTING);
+            else
+                Files.deleteIfExists(partialPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to store file " + file.getFileID());
+        }
+    }
 
-            // find peer that has chunk
-            final SocketAddress addressInfo = Chord.chordInstance.lookup(chunkID, replicator); // get assigned peer
-            ChunkLookupRequest lookupRequest = new ChunkLookupRequest(fileID, chunkNo, replicator, Peer.addressInfo); // resolve redirects
-            ChunkLookupResponse lookupResponse = MessageHandler.sendMessage(lookupRequest, addressInfo);
+    /**
+     * Fetches a chunk from the first replica that has it, the peer assigned to the first one may be given
+     * if it was already looked up
+     */
+    public static CompletableFuture<ChunkResponse> getChunkAsync(String fileID, int chunkNo, int replDegree, SocketAddress firstAssigned) {
+        return getChunkAsync(fileID, chunkNo, replDegree, 0, firstAssigned);
+    }
 
-            if (lookupResponse == null) {
-                System.out.println("Could not read response for ChunkLookupRequest on chunk " + chunkID);
-                continue;
-            }
-            else if (lookupResponse.getStatus() != Status.SUCCESS) {
-                System.out.println("Could not find peer with chunk " + chunkID + ", got error " + lookupResponse.getStatus());
-                continue;
-            }
+    private static CompletableFuture<ChunkResponse> getChunkAsync(String fileID, int chunkNo, int replDegree, int replicator, SocketAddress assigned) {
+        if (replicator >= replDegree)
+            return CompletableFuture.completedFuture(null);
 
-            GetChunkRequest getChunkRequest = new GetChunkRequest(fileID, chunkNo);
-            ChunkResponse chunkResponse = MessageHandler.sendMessage(getChunkRequest, lookupResponse.getAddress());
+        final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
+        final CompletableFuture<SocketAddress> lookup = assigned != null ? CompletableFuture.completedFuture(assigned)
+                : Chord.chordInstance.lookupAsync(chunkID, replicator);
 
-            if (chunkResponse == null) {
-                System.out.println("Could not read response for chunk " + chunkNo);
-                continue;
-            } else if (chunkResponse.getStatus() != Status.SUCCESS) {
-                System.out.println("Could not retrieve chunk " + chunkNo + ", got error " + chunkResponse.getStatus());
-                continue;
-            }
+        // find peer that has chunk
+        return lookup.thenCompose(addressInfo -> { // get assigned peer
+            final ChunkLookupRequest lookupRequest = new ChunkLookupRequest(fileID, chunkNo, replicator, Peer.addressInfo); // resolve redirects
+            final long sent = System.nanoTime();
+            return MessageHandler.<ChunkLookupResponse>sendMessageAsync(lookupRequest, addressInfo).thenCompose(lookupResponse -> {
+                if (lookupResponse == null)
+                    System.out.println("Could not read response for ChunkLookupRequest on chunk " + chunkID);
+                else if (lookupResponse.getStatus() != Status.SUCCESS)
+                    System.out.println("Could not find peer with chunk " + chunkID + ", got error " + lookupResponse.getStatus());
+                else {
+                    recordChunkLookup(addressInfo, lookupResponse, sent);
+                    return CompletableFuture.completedFuture(lookupResponse);
+                }
 
-            System.out.println("Retrieved chunk " + chunkNo + " successfully");
-            return chunkResponse;
-        }
-        return null;
+                return lookupAgain(fileID, chunkNo, replicator, addressInfo);
+            });
+        }).thenCompose(lookupResponse -> {
+            if (lookupResponse == null)
+                return getChunkAsync(fileID, chunkNo, replDegree, replicator + 1, null);
+
+            final GetChunkRequest getChunkRequest = new GetChunkRequest(fileID, chunkNo);
+            return MessageHandler.<ChunkResponse>sendMessageAsync(getChunkRequest, lookupResponse.getAddress()).thenCompose(chunkResponse -> {
+                if (chunkResponse == null) {
+                    System.out.println("Could not read response for chunk " + chunkNo);
+                    return getChunkAsync(fileID, chunkNo, replDegree, replicator + 1, null);
+                } else if (chunkResponse.getStatus() != Status.SUCCESS) {
+                    System.out.println("Could not retrieve chunk " + chunkNo + ", got error " + chunkResponse.getStatus());
+                    return getChunkAsync(fileID, chunkNo, replDegree, replicator + 1, null);
+                }
+
+                System.out.println("Retrieved chunk " + chunkNo + " successfully");
+                return CompletableFuture.completedFuture(chunkResponse);
+            });
+        });
+    }
+
+    /**
+     * The peer that failed to find a replica may have come from the lookup cache, so the replica is looked up
+     * again through the ring and asked for once more if another peer is assigned to it now
+     */
+    private static CompletableFuture<ChunkLookupResponse> lookupAgain(String fileID, int chunkNo, int replicator, SocketAddress failed) {
+        final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
+        Chord.chordInstance.invalidateLookup(chunkID, replicator);
+
+        return Chord.chordInstance.lookupAsync(chunkID, replicator).thenCompose(addressInfo -> {
+            if (addressInfo.equals(failed))
+                return CompletableFuture.completedFuture(null);
+
+            final ChunkLookupRequest lookupRequest = new ChunkLookupRequest(fileID, chunkNo, replicator, Peer.addressInfo);
+            final long sent = System.nanoTime();
+            return MessageHandler.<ChunkLookupResponse>sendMessageAsync(lookupRequest, addressInfo).thenApply(lookupResponse -> {
+                if (lookupResponse == null || lookupResponse.getStatus() != Status.SUCCESS)
+                    return null;
+
+                recordChunkLookup(addressInfo, lookupResponse, sent);
+                return lookupResponse;
+            });
+        });
+    }
+
+    /**
+     * The assigned peer is the first hop of a chunk lookup, and each redirect it followed is one more
+     */
+    private static void recordChunkLookup(SocketAddress assigned, ChunkLookupResponse response, long sent) {
+
+        final long elapsed = System.nanoTime() - sent;
+        LookupStats.recordHop(assigned, elapsed - response.getForwardedNanos());
+        LookupStats.recordLookup("chunkLookup", response.getRedirects() + 1, elapsed);
     }
 
     public static ChunkInfoResponse getChunkInfo(String fileID, int chunkNo, int replDegree) {
@@ -110,6 +200,7 @@ public class Restore extends Action {
             // find peer that has chunk
             final SocketAddress addressInfo = Chord.chordInstance.lookup(chunkID, replicator); // get assigned peer
             final ChunkLookupRequest lookupRequest = new ChunkLookupRequest(fileID, chunkNo, replicator, Peer.addressInfo); // resolve redirects
+            final long sent = System.nanoTime();
             final ChunkLookupResponse lookupResponse = MessageHandler.sendMessage(lookupRequest, addressInfo);
 
             if (lookupResponse == null) {
@@ -120,6 +211,7 @@ public class Restore extends Action {
                 System.out.println("Could not find peer with chunk " + chunkID + ", got error " + lookupResponse.getStatus());
                 continue;
             }
+            recordChunkLookup(addressInfo, lookupResponse, sent);
 
             final GetChunkInfoRequest getChunkRequest = new GetChunkInfoRequest(fileID, chunkNo);
             final ChunkInfoResponse chunkResponse = MessageHandler.sendMessage(getChunkRequest, lookupResponse.getAddress());
@@ -1,6 +1,7 @@
 package com.feup.sdis.actions;
 
 import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.LookupStats;
 import com.feup.sdis.model.*;
 import com.feup.sdis.peer.Constants;
 import com.feup.sdis.peer.Peer;
@@ -51,7 +52,10 @@ public class State extends Action {
             }
         }
 
-        message += Chord.chordInstance.state();
+        // One state per position this peer holds on the ring
+        for (Chord node : Chord.getNodes())
+            message += node.state();
+        message += LookupStats.state();
 
         int maxDiskSpace = Constants.MAX_OCCUPIED_DISK_SPACE;
         message += "Disk space limit: " + (maxDiskSpace/1000 + " KBytes") + "\n";
@@ -0,0 +1,144 @@
+package com.feup.sdis.bench;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.RingKeys;
+import com.feup.sdis.chord.Route;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.peer.Constants;
+import com.feup.sdis.peer.InMemoryTransport;
+import com.feup.sdis.peer.MessageHandler;
+
+/**
+ * Builds a ring of many peers in this JVM over the in-memory transport and times lookups of random keys
+ * from random peers, checking each answer against the peers that are up and counting its hops. Then stops
+ * some of the peers at once and measures again while the ring repairs itself.
+ *
+ * InMemoryRingBenchmark peers lookups failures
+ * The latency between peers is set with -Dsdis.benchLatency (ms), the width of the ring defaults to 32 bits.
+ */
+public class InMemoryRingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length != 3) {
+            System.out.println("Usage: InMemoryRingBenchmark peers lookups failures");
+            return;
+        }
+
+        final int peers = Integer.parseInt(args[0]);
+        final int lookups = Integer.parseInt(args[1]);
+        final int failures = Integer.parseInt(args[2]);
+
+        // Hundreds of peers don't fit in the default ring, and every position shares the maintenance threads
+        if (System.getProperty("sdis.idBits") == null)
+            System.setProperty("sdis.idBits", "32");
+        if (System.getProperty("sdis.maintenanceThreads") == null)
+            System.setProperty("sdis.maintenanceThreads", "16");
+
+        // The store is shared by every peer of the JVM and stays empty, it only needs somewhere to live
+        Constants.peerRootFolder = Files.createTempDirectory("ring").toString() + "/";
+
+        final InMemoryTransport transport = new InMemoryTransport(Long.getLong("sdis.benchLatency", 1));
+        MessageHandler.setTransport(transport);
+
+        final Random random = new Random(42);
+        final List<Chord> ring = new ArrayList<>();
+        final long joinStart = System.nanoTime();
+        for (int i = 0; i < peers; i++) {
+            final SocketAddress address = new SocketAddress("10.0." + i / 256 + "." + i % 256, 25566, "peer-" + i);
+            if (Chord.getNode(Chord.normalizeToSize(address.getPeerID(), Constants.ID_BITS)) != null) {
+                System.out.println("Peer " + i + " has the same ID as another one, skipping it");
+                continue;
+            }
+
+            transport.start(address);
+            final Chord node = ring.isEmpty() ? new Chord(address)
+                    : new Chord(address, ring.get(random.nextInt(ring.size())).getSelf());
+            node.initThreads();
+            ring.add(node);
+        }
+        System.out.println("joined=" + ring.size() + " in " + (System.nanoTime() - joinStart) / 1000000 + "ms");
+
+        // Let the ring stabilize and the finger tables fill in before measuring
+        Thread.sleep(Long.getLong("sdis.benchWarmup", 10000));
+        measure("stable", ring, lookups, random);
+
+        for (int i = 0; i < failures && ring.size() > 1; i++) {
+            final Chord failed = ring.remove(random.nextInt(ring.size()));
+            transport.stop(failed.getSelf());
+            failed.stop();
+        }
+        measure("failed=" + failures, ring, lookups, random);
+
+        Thread.sleep(Long.getLong("sdis.benchWarmup", 10000));
+        measure("repaired", ring, lookups, random);
+
+        System.exit(0);
+    }
+
+    private static void measure(String phase, List<Chord> ring, int lookups, Random random) {
+
+        final TreeMap<UUID, SocketAddress> alive = new TreeMap<>(RingKeys::compare);
+        for (Chord node : ring)
+            alive.put(node.getSelf().getPeerID(), node.getSelf());
+
+        // Positions whose successor is the next peer that is up, the ring is whole when all of them are
+        int linked = 0;
+        for (Chord node : ring) {
+            final Map.Entry<UUID, SocketAddress> next = alive.higherEntry(node.getSelf().getPeerID());
+            if (node.getSuccessor().equals(next != null ? next.getValue() : alive.firstEntry().getValue()))
+                linked++;
+        }
+
+        final long[] latencies = new long[lookups];
+        final long[] hops = new long[lookups];
+        int wrong = 0;
+        for (int i = 0; i < lookups; i++) {
+            final Chord from = ring.get(random.nextInt(ring.size()));
+            final UUID key = Chord.normalizeToSize(new UUID(random.nextLong(), random.nextLong()), Constants.ID_BITS);
+
+            final long start = System.nanoTime();
+            Chord.setHandlingNode(from.getSelf().getPeerID());
+            final Route<SocketAddress> route;
+            try {
+                route = from.routeSuccessor(key);
+            } finally {
+                Chord.setHandlingNode(null);
+            }
+            latencies[i] = System.nanoTime() - start;
+            hops[i] = route.getHops();
+            final SocketAddress successor = route.getValue();
+
+            final Map.Entry<UUID, SocketAddress> expected = alive.ceilingEntry(key) != null ? alive.ceilingEntry(key) : alive.firstEntry();
+            if (successor == null || !successor.equals(expected.getValue()))
+                wrong++;
+        }
+
+        Arrays.sort(latencies);
+        System.out.println(phase + " peers=" + ring.size()
+                + " linked=" + linked
+                + " lookups=" + lookups
+                + " p50=" + percentile(latencies, 50) + "ms"
+                + " p99=" + percentile(latencies, 99) + "ms"
+                + " max=" + percentile(latencies, 100) + "ms"
+                + " hops=" + String.format("%.2f", Arrays.stream(hops).average().orElse(0))
+                + " maxHops=" + Arrays.stream(hops).max().orElse(0)
+                + " log2(peers)=" + String.format("%.2f", Math.log(ring.size()) / Math.log(2))
+                + " wrong=" + wrong);
+    }
+
+    private static String percentile(long[] sorted, double percentile) {
+
+        final int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return String.format("%.2f", sorted[Math.max(0, index)] / 1e6);
+    }
+}
@@ -0,0 +1,81 @@
+package com.feup.sdis.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.peer.Constants;
+import com.feup.sdis.peer.MessageHandler;
+import com.feup.sdis.peer.Peer;
+
+/**
+ * Joins a running ring as an extra peer and times lookups of random keys from it, one after the other.
+ * Stop one of the other peers (kill -STOP) while it runs to see the latency under churn.
+ *
+ * LookupLatencyBenchmark port chordEntryIp:port lookups
+ * Run once with and once without -Dsdis.lookup=iterative to compare them.
+ */
+public class LookupLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length != 3) {
+            System.out.println("Usage: LookupLatencyBenchmark port chordEntryIp:port lookups");
+            return;
+        }
+
+        final int port = Integer.parseInt(args[0]);
+        final String[] entry = args[1].split(":");
+        final int lookups = Integer.parseInt(args[2]);
+
+        final Thread receiver = new Thread(() -> new MessageHandler(port).receive());
+        receiver.setDaemon(true);
+        receiver.start();
+        Thread.sleep(500);
+
+        Peer.addressInfo = new SocketAddress("127.0.0.1", port, "benchmark-" + port);
+        Chord.chordInstance = new Chord(Peer.addressInfo, new SocketAddress(entry[0], Integer.parseInt(entry[1]), "entry"));
+        Chord.chordInstance.initThreads();
+
+        // Let the finger table fill in before measuring
+        Thread.sleep(Long.getLong("sdis.benchWarmup", 10000));
+
+        final Random random = new Random(42);
+        final long[] latencies = new long[lookups];
+        int selfAnswers = 0;
+        int stalled = 0;
+        for (int i = 0; i < lookups; i++) {
+            final UUID key = Chord.normalizeToSize(new UUID(random.nextLong(), random.nextLong()), Constants.ID_BITS);
+
+            final long start = System.nanoTime();
+            final SocketAddress successor = Chord.chordInstance.findSuccessor(key);
+            latencies[i] = System.nanoTime() - start;
+
+            if (latencies[i] > 1000000000L)
+                stalled++;
+
+            if (successor == null || successor.equals(Peer.addressInfo))
+                selfAnswers++;
+        }
+
+        Arrays.sort(latencies);
+        System.out.println("mode=" + (Constants.ITERATIVE_LOOKUP ? "iterative alpha=" + Constants.LOOKUP_PARALLELISM : "recursive")
+                + " lookups=" + lookups
+                + " p50=" + percentile(latencies, 50) + "ms"
+                + " p99=" + percentile(latencies, 99) + "ms"
+                + " p99.9=" + percentile(latencies, 99.9) + "ms"
+                + " max=" + percentile(latencies, 100) + "ms"
+                + " over1s=" + stalled
+                + " selfAnswers=" + selfAnswers);
+
+        System.exit(0);
+    }
+
+    private static String percentile(long[] sorted, double percentile) {
+
+        final int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return String.format("%.2f", sorted[Math.max(0, index)] / 1e6);
+    }
+}
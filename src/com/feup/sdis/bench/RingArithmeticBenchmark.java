@@ -0,0 +1,195 @@
+package com.feup.sdis.bench;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.UUID;
+
+import com.feup.sdis.chord.RingKeys;
+
+/**
+ * Compares the key arithmetic done by a lookup with BigInteger, as Chord used to do it, against
+ * RingKeys. A lookup step here is what closestPrecedingNode and findSuccessor do at every hop:
+ * an interval check per finger and successor, a distance comparison and the check against the successor.
+ *
+ * RingArithmeticBenchmark [bits] [lookups]
+ */
+public class RingArithmeticBenchmark {
+
+    private static final BigInteger B = BigInteger.ONE.shiftLeft(64);
+    private static final BigInteger L = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final int FINGERS = 8;
+    private static final int SUCCESSORS = 3;
+    private static final int KEYS = 1024;
+
+    public static void main(String[] args) {
+
+        final int bits = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        final int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+
+        final Random random = new Random(42);
+        final UUID[] keys = new UUID[KEYS];
+        for (int i = 0; i < KEYS; i++)
+            keys[i] = RingKeys.normalize(new UUID(random.nextLong(), random.nextLong()), bits);
+
+        checkEquivalent(keys, bits);
+
+        // Warm up both versions before measuring
+        for (int i = 0; i < 3; i++) {
+            run(keys, bits, lookups, true);
+            run(keys, bits, lookups, false);
+        }
+
+        report("biginteger", keys, bits, lookups, true);
+        report("ringkeys  ", keys, bits, lookups, false);
+    }
+
+    private static void report(String name, UUID[] keys, int bits, int lookups, boolean bigInteger) {
+
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        final long result = run(keys, bits, lookups, bigInteger);
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(name + " bits=" + bits
+                + " lookup=" + String.format("%.1f", (double) elapsed / lookups) + "ns"
+                + " normalize=" + String.format("%.1f", timeNormalize(keys, bits, lookups, bigInteger)) + "ns"
+                + " allocated=" + (allocated / lookups) + "B/lookup"
+                + " (" + result + ")");
+    }
+
+    private static long run(UUID[] keys, int bits, int lookups, boolean bigInteger) {
+
+        long found = 0;
+        for (int i = 0; i < lookups; i++) {
+            final UUID self = keys[i % KEYS];
+            final UUID key = keys[(i * 7 + 3) % KEYS];
+            final UUID successor = keys[(i + 1) % KEYS];
+
+            UUID best = self;
+            for (int j = 0; j < FINGERS + SUCCESSORS; j++) {
+                final UUID finger = keys[(i + j * 31) % KEYS];
+                if (between(self, key, finger, false, false)) {
+                    if (best == self || (bigInteger ? compareDistanceBig(finger, best, key)
+                            : RingKeys.compareDifference(finger, best, key)) <= 0)
+                        best = finger;
+                }
+            }
+
+            if (between(self, successor, key, false, true))
+                found++;
+            if (bigInteger ? distanceBig(self, key, bits).compareTo(distanceBig(self, best, bits)) < 0
+                    : RingKeys.compareClockwise(self, key, best, bits) < 0)
+                found++;
+        }
+
+        return found;
+    }
+
+    private static double timeNormalize(UUID[] keys, int bits, int count, boolean bigInteger) {
+
+        long sum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            final UUID id = keys[i % KEYS];
+            sum += (bigInteger ? normalizeBig(id, bits) : RingKeys.normalize(id, bits)).getLeastSignificantBits();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        if (sum == 42)
+            System.out.println();
+        return (double) elapsed / count;
+    }
+
+    private static void checkEquivalent(UUID[] keys, int bits) {
+
+        for (int i = 0; i < KEYS; i++) {
+            final UUID a = keys[i];
+            final UUID b = keys[(i * 13 + 5) % KEYS];
+            final UUID c = keys[(i * 17 + 11) % KEYS];
+
+            if (Integer.signum(compareDistanceBig(a, b, c)) != Integer.signum(RingKeys.compareDifference(a, b, c))
+                    || Integer.signum(distanceBig(a, b, bits).compareTo(distanceBig(a, c, bits)))
+                    != Integer.signum(RingKeys.compareClockwise(a, b, c, bits))
+                    || !normalizeBig(a, bits).equals(RingKeys.normalize(a, bits)))
+                throw new IllegalStateException("Results differ for " + a + " " + b + " " + c);
+
+            for (int exponent = 0; exponent < bits; exponent++) {
+                final BigInteger step = convertToBigInteger(a).add(BigInteger.ONE.shiftLeft(exponent))
+                        .mod(BigInteger.ONE.shiftLeft(bits));
+                if (!convertFromBigInteger(step).equals(RingKeys.addPowerOfTwo(a, exponent, bits)))
+                    throw new IllegalStateException("Finger steps differ for " + a);
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    private static boolean between(UUID lowerBound, UUID upperBound, UUID key, boolean closedLeft, boolean closedRight) {
+
+        return RingKeys.between(lowerBound, upperBound, key, closedLeft, closedRight);
+    }
+
+    /*
+     * The BigInteger versions Chord used before
+     */
+
+    private static BigInteger distanceBig(UUID from, UUID to, int bits) {
+
+        return convertToBigInteger(to).subtract(convertToBigInteger(from)).mod(BigInteger.ONE.shiftLeft(bits));
+    }
+
+    private static int compareDistanceBig(UUID a, UUID b, UUID c) {
+
+        BigInteger aInt = convertToBigInteger(a);
+        BigInteger bInt = convertToBigInteger(b);
+        BigInteger cInt = convertToBigInteger(c);
+        BigInteger acDif = aInt.subtract(cInt).abs();
+        BigInteger bcDif = bInt.subtract(cInt).abs();
+
+        return acDif.compareTo(bcDif);
+    }
+
+    private static UUID normalizeBig(UUID id, int bits) {
+        BigInteger maxV = new BigInteger(String.valueOf(2));
+        maxV = maxV.pow(bits);
+        BigInteger val = convertToBigInteger(id);
+        val = val.mod(maxV);
+
+        return convertFromBigInteger(val);
+    }
+
+    private static BigInteger convertToBigInteger(UUID id) {
+        BigInteger lo = BigInteger.valueOf(id.getLeastSignificantBits());
+        BigInteger hi = BigInteger.valueOf(id.getMostSignificantBits());
+
+        if (hi.signum() < 0)
+            hi = hi.add(B);
+
+        if (lo.signum() < 0)
+            lo = lo.add(B);
+
+        return lo.add(hi.multiply(B));
+    }
+
+    private static UUID convertFromBigInteger(BigInteger x) {
+        BigInteger[] parts = x.divideAndRemainder(B);
+        BigInteger hi = parts[0];
+        BigInteger lo = parts[1];
+
+        if (L.compareTo(lo) < 0)
+            lo = lo.subtract(B);
+
+        if (L.compareTo(hi) < 0)
+            hi = hi.subtract(B);
+
+        return new UUID(hi.longValueExact(), lo.longValueExact());
+    }
+}
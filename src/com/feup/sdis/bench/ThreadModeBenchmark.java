@@ -0,0 +1,94 @@
+package com.feup.sdis.bench;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.chord.PingRequest;
+import com.feup.sdis.peer.MessageHandler;
+import com.feup.sdis.peer.ThreadPools;
+
+/**
+ * Compares the thread modes on blocking work: starts a message handler and runs every task at once on
+ * the service pool, each one doing a number of blocking exchanges with it, one after the other.
+ *
+ * ThreadModeBenchmark port tasks rounds
+ * Run once with and once without -Dsdis.virtualThreads=true to compare them.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length != 3) {
+            System.out.println("Usage: ThreadModeBenchmark port tasks rounds");
+            return;
+        }
+
+        final int port = Integer.parseInt(args[0]);
+        final int tasks = Integer.parseInt(args[1]);
+        final int rounds = Integer.parseInt(args[2]);
+
+        // Every task has a request in flight at once, which the default queue would refuse
+        if (System.getProperty("sdis.handlerQueue") == null)
+            System.setProperty("sdis.handlerQueue", String.valueOf(tasks));
+
+        final Thread receiver = new Thread(() -> new MessageHandler(port).receive());
+        receiver.setDaemon(true);
+        receiver.start();
+        Thread.sleep(500);
+
+        final SocketAddress server = new SocketAddress("127.0.0.1", port, "benchmark");
+        final ExecutorService pool = ThreadPools.newTaskPool();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<Future<?>> results = new ArrayList<>();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            results.add(pool.submit(() -> {
+                for (int j = 0; j < rounds; j++)
+                    if (MessageHandler.sendMessage(new PingRequest(), server) == null)
+                        failed.incrementAndGet();
+            }));
+        }
+
+        for (Future<?> result : results)
+            result.get();
+        final long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        final long requests = (long) tasks * rounds;
+        System.out.println("mode=" + (ThreadPools.isVirtual() ? "virtual" : "platform")
+                + " tasks=" + tasks + " rounds=" + rounds
+                + " elapsed=" + elapsedMs + "ms"
+                + " throughput=" + (requests * 1000 / Math.max(1, elapsedMs)) + "req/s"
+                + " failed=" + failed.get()
+                + " peakThreads=" + ManagementFactory.getThreadMXBean().getPeakThreadCount()
+                + " peakRss=" + peakResidentMemory());
+
+        MessageHandler.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Peak resident set of the process, which unlike the heap includes the stacks of the threads
+     */
+    private static String peakResidentMemory() {
+        final Path status = Paths.get("/proc/self/status");
+        try {
+            for (String line : Files.readAllLines(status))
+                if (line.startsWith("VmHWM:"))
+                    return line.substring("VmHWM:".length()).trim().replace(" ", "");
+        } catch (Exception e) {
+            // Only available on Linux
+        }
+
+        final Runtime runtime = Runtime.getRuntime();
+        return "heap " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + "MB";
+    }
+}
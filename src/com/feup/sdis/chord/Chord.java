@@ -1,16 +1,26 @@
 package com.feup.sdis.chord;
 
 import java.io.IOException;
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
 
-import com.feup.sdis.actions.BSDispatcher;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.BatchRequest;
 import com.feup.sdis.messages.requests.Request;
@@ -21,45 +31,58 @@ import com.feup.sdis.model.ChunkTransfer;
 import com.feup.sdis.model.PeerInfo;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
+import com.feup.sdis.peer.Constants;
+import com.feup.sdis.peer.FailureDetector;
+import com.feup.sdis.peer.FreeSpace;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
+import com.feup.sdis.peer.RoundTripTimes;
+import com.feup.sdis.peer.ThreadPools;
 
 
 public class Chord {
 
     // Constants
-    private static final BigInteger B = BigInteger.ONE.shiftLeft(64); // 2^64
-    private static final BigInteger L = BigInteger.valueOf(Long.MAX_VALUE);
     private static final boolean DEBUG_MODE = true;
-    private static final int FINGER_TABLE_SIZE = 8;
-    private static final int FIX_FINGERS_INTERVAL_MS = 500;
-    private static final int STABILIZE_INTERVAL_MS = 500;
-    private static final int CHECK_PREDECESSOR_INTERVAL_MS = 500;
+    private static final int FINGER_TABLE_SIZE = Constants.ID_BITS;
+    // Fastest rate of the maintenance tasks, while the ring doesn't change they back off up to the maximum
+    private static final int FIX_FINGERS_INTERVAL_MS = 250;
+    private static final int STABILIZE_INTERVAL_MS = 250;
+    private static final int CHECK_PREDECESSOR_INTERVAL_MS = 250;
+    private static final int MAX_MAINTENANCE_INTERVAL_MS = 4000;
     private static final int SUCCESSOR_LIST_SIZE = 3;
-    private static final ScheduledThreadPoolExecutor periodicThreadPool = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(3);
+    // A finger picked by proximity is only replaced by one whose round trip time is below this share of its own
+    private static final double PROXIMITY_SWITCH_RATIO = 0.75;
+    private static final ScheduledExecutorService periodicThreadPool = ThreadPools.newScheduledPool(Constants.MAINTENANCE_THREADS);
 
     public static Chord chordInstance;
-    private final AtomicReferenceArray<SocketAddress> fingerTable;
-    private final AtomicReferenceArray<SocketAddress> successorList;
+    // Every position this peer holds on the ring, by their ID
+    private static final Map<UUID, Chord> nodes = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Chord> handlingNode = new ThreadLocal<>();
+    private static final AtomicInteger gossipRound = new AtomicInteger();
+    private final AtomicReference<RoutingTable> routingTable;
     private final UUID[] stepValues;
     private final AtomicReference<SocketAddress> self;
     private final AtomicReference<SocketAddress> predecessor = new AtomicReference<>();
-    private int next = 1;
+    private final LookupCache lookupCache = new LookupCache(FINGER_TABLE_SIZE);
+    private final MaintenanceTask stabilizeTask = new MaintenanceTask("stabilize", this.onBehalf(this::stabilize), periodicThreadPool,
+            STABILIZE_INTERVAL_MS, MAX_MAINTENANCE_INTERVAL_MS);
+    private final MaintenanceTask fixFingersTask = new MaintenanceTask("fixFingers", this.onBehalf(this::fixFingers), periodicThreadPool,
+            FIX_FINGERS_INTERVAL_MS, MAX_MAINTENANCE_INTERVAL_MS);
+    private final MaintenanceTask checkPredecessorTask = new MaintenanceTask("checkPredecessor", this.onBehalf(this::checkPredecessor), periodicThreadPool,
+            CHECK_PREDECESSOR_INTERVAL_MS, MAX_MAINTENANCE_INTERVAL_MS);
+    private final AtomicInteger next = new AtomicInteger(1);
     private boolean initialized = false;
 
     // create
     public Chord(SocketAddress self) {
         this.self = new AtomicReference<>(self);
-        final var fingerTable = new SocketAddress[FINGER_TABLE_SIZE];
-        final var successorList = new SocketAddress[SUCCESSOR_LIST_SIZE];
         this.stepValues = new UUID[FINGER_TABLE_SIZE];
-        Arrays.fill(fingerTable, this.self.get());
-        Arrays.fill(successorList, this.self.get());
-        this.fingerTable = new AtomicReferenceArray<>(fingerTable);
-        this.successorList = new AtomicReferenceArray<>(successorList);
+        this.routingTable = new AtomicReference<>(new RoutingTable(self, FINGER_TABLE_SIZE, SUCCESSOR_LIST_SIZE));
         this.initKeyLookupSteps();
 
         self.setPeerID(Chord.normalizeToSize(self.getPeerID(), FINGER_TABLE_SIZE));
+        nodes.put(self.getPeerID(), this);
     }
 
     // join
@@ -68,22 +91,118 @@ public class Chord {
 
         node.setPeerID(Chord.normalizeToSize(node.getPeerID(), FINGER_TABLE_SIZE));
 
-        ClosestPrecedingResponse res = MessageHandler.sendMessage(new ClosestPrecedingRequest(self), node);
+        FindSuccessorResponse res = MessageHandler.sendMessage(new FindSuccessorRequest(self.getPeerID()), node);
 
-        if (res == null || res.getStatus() == Status.ERROR)
+        if (res == null || res.getStatus() == Status.ERROR) {
+            nodes.remove(self.getPeerID(), this);
             throw new Exception("Could not create chord peer");
+        }
 
         this.setSuccessor(res.getAddress());
+        this.bootstrapRouting();
+    }
+
+    /**
+     * A new position takes the routing state of its successor, which sits right next to it on the ring, and
+     * then resolves all its fingers in one batch instead of one per fixFingers run, so it routes well at once
+     */
+    private void bootstrapRouting() {
+
+        final SocketAddress me = self.get();
+        final SocketAddress successor = this.getSuccessor();
+        final GetRoutingTableResponse res = MessageHandler.sendMessage(new GetRoutingTableRequest(), successor);
+        if (res == null || res.getStatus() == Status.ERROR) {
+            if (DEBUG_MODE)
+                System.out.println("> CHORD: Could not get the routing table of " + successor);
+            return;
+        }
+
+        if (res.getSuccessors().size() >= SUCCESSOR_LIST_SIZE - 1)
+            this.routingTable.updateAndGet(table -> table.withSuccessorsOfSuccessor(res.getSuccessors()));
+
+        // Until the batch answers, each finger is the first peer the successor knows at or after its start
+        final List<SocketAddress> known = new ArrayList<>(res.getFingers());
+        known.addAll(res.getSuccessors());
+        known.add(successor);
+        known.removeIf(peer -> peer == null || peer.equals(me));
+        for (int i = 1; i < FINGER_TABLE_SIZE && !known.isEmpty(); i++) {
+            final UUID start = this.stepValues[i];
+            final SocketAddress seed = known.stream()
+                    .min((a, b) -> RingKeys.compareClockwise(start, a.getPeerID(), b.getPeerID(), FINGER_TABLE_SIZE)).get();
+            final int finger = i;
+            this.routingTable.updateAndGet(table -> table.withFinger(finger, seed));
+        }
+
+        // A lookup that failed comes back as this position, the seed is kept instead
+        final List<UUID> starts = Arrays.asList(this.stepValues).subList(1, FINGER_TABLE_SIZE);
+        final Map<UUID, SocketAddress> found = this.findSuccessors(starts).getValue();
+        int resolved = 0;
+        for (int i = 1; i < FINGER_TABLE_SIZE; i++) {
+            final SocketAddress fingerNode = found.get(this.stepValues[i]);
+            if (fingerNode == null || fingerNode.equals(me))
+                continue;
+
+            final int finger = i;
+            this.routingTable.updateAndGet(table -> table.withFinger(finger, fingerNode));
+            resolved++;
+        }
+
+        if (DEBUG_MODE)
+            System.out.println("> CHORD: Joined with " + resolved + " of " + (FINGER_TABLE_SIZE - 1) + " fingers resolved through " + successor);
     }
 
     public AtomicReferenceArray<SocketAddress> getSuccessorList(){
 
-        return this.successorList;
+        return new AtomicReferenceArray<>(this.routingTable.get().getSuccessors().toArray(new SocketAddress[0]));
+    }
+
+    public RoutingTable getRoutingTable() {
+
+        return this.routingTable.get();
+    }
+
+    /**
+     * Next peer to ask for a chunk that doesn't fit here, on the way from this position to the responsible
+     * one: the closest peer that gossiped room for it, among the routing table and every peer heard from.
+     * Without one, the first successor that hasn't gossiped, past the ones known to be full. Never goes past
+     * the responsible position, whose redirect entry ends the walk once it comes back there.
+     */
+    public SocketAddress nextPeerWithSpace(int bytes, SocketAddress responsible) {
+
+        final UUID selfID = this.self.get().getPeerID();
+        final UUID endID = responsible.getPeerID();
+        final RoutingTable table = this.routingTable.get();
+
+        final List<SocketAddress> known = new ArrayList<>(table.getSuccessors());
+        known.addAll(table.getFingers());
+        known.addAll(FreeSpace.knownPeers());
+
+        SocketAddress closest = null;
+        for (SocketAddress peer : known) {
+            if (!this.betweenTwoKeys(selfID, endID, peer.getPeerID(), false, false) || FreeSpace.get(peer) < bytes)
+                continue;
+            if (closest == null || RingKeys.compareClockwise(selfID, peer.getPeerID(), closest.getPeerID(), FINGER_TABLE_SIZE) < 0)
+                closest = peer;
+        }
+        if (closest != null)
+            return closest;
+
+        SocketAddress lastFull = null;
+        for (SocketAddress successor : table.getSuccessors()) {
+            if (!this.betweenTwoKeys(selfID, endID, successor.getPeerID(), false, false))
+                break;
+            if (FreeSpace.get(successor) < 0)
+                return successor;
+            lastFull = successor;
+        }
+
+        // Every successor before the responsible position is full, the walk goes on from the last one
+        return lastFull != null ? lastFull : responsible;
     }
 
     public SocketAddress getSuccessor() {
 
-        return this.fingerTable.get(0);
+        return this.routingTable.get().getSuccessor();
     }
 
     public void shutdown(){
@@ -91,28 +210,196 @@ public class Chord {
         periodicThreadPool.shutdown();
     }
 
-    private synchronized void setSuccessor(SocketAddress newSuccessor) {
+    /**
+     * Takes this position off the peer without stopping the others, as if it had crashed
+     */
+    public void stop() {
+
+        this.stabilizeTask.stop();
+        this.fixFingersTask.stop();
+        this.checkPredecessorTask.stop();
+        nodes.remove(this.self.get().getPeerID(), this);
+    }
+
+    // Requests sent by the task gossip about this position and not the first one of the peer
+    private Runnable onBehalf(Runnable work) {
+
+        return () -> {
+            handlingNode.set(this);
+            try {
+                work.run();
+            } finally {
+                handlingNode.remove();
+            }
+        };
+    }
+
+    /**
+     * The peers sent along with every message: the sending position first, then its successor, its
+     * predecessor and two of its fingers, a different pair every time
+     */
+    public static List<SocketAddress> gossipDigest() {
+
+        return gossipDigest(current());
+    }
+
+    public static List<SocketAddress> gossipDigest(Chord node) {
+
+        if (node == null)
+            return Collections.emptyList();
+
+        final RoutingTable table = node.routingTable.get();
+        final List<SocketAddress> digest = new ArrayList<>(5);
+        digest.add(node.self.get());
+        addToDigest(digest, table.getSuccessor());
+        addToDigest(digest, node.predecessor.get());
+        if (FINGER_TABLE_SIZE > 1) {
+            final int round = gossipRound.getAndIncrement();
+            addToDigest(digest, table.getFinger(1 + Math.floorMod(round, FINGER_TABLE_SIZE - 1)));
+            addToDigest(digest, table.getFinger(1 + Math.floorMod(round + FINGER_TABLE_SIZE / 2, FINGER_TABLE_SIZE - 1)));
+        }
+
+        return digest;
+    }
+
+    private static void addToDigest(List<SocketAddress> digest, SocketAddress peer) {
+
+        if (peer != null && !digest.contains(peer))
+            digest.add(peer);
+    }
+
+    /**
+     * Refreshes the routing state of every position of the receiving peer with the peers another one sent
+     * along with a message, so routing improves with the traffic and not only with the maintenance tasks
+     */
+    public static void learn(List<SocketAddress> gossip, SocketAddress receiver) {
+
+        if (gossip.isEmpty() || receiver == null)
+            return;
+
+        for (Chord node : nodes.values()) {
+            final SocketAddress position = node.self.get();
+            if (position.getPort() == receiver.getPort() && position.getIp().equals(receiver.getIp()))
+                node.learnFrom(gossip);
+        }
+    }
+
+    private void learnFrom(List<SocketAddress> gossip) {
+
+        final SocketAddress me = self.get();
+
+        // Only the sender is known to be alive, so it is the only one that may enter the successor list
+        final SocketAddress sender = gossip.get(0);
+        final RoutingTable previous = this.routingTable.getAndUpdate(table -> table.withSuccessorCandidate(sender, me));
+        if (!previous.getSuccessors().equals(this.routingTable.get().getSuccessors())) {
+            if (DEBUG_MODE)
+                System.out.println("> CHORD: Learned successor " + sender);
+            this.membershipChanged();
+        }
+
+        // A dead peer taken as a finger is dropped on the first lookup that fails through it
+        for (SocketAddress peer : gossip) {
+            if (peer == null || peer.equals(me))
+                continue;
+
+            for (int i = 1; i < FINGER_TABLE_SIZE; i++) {
+                final int finger = i;
+                final UUID start = this.stepValues[i];
+                final UUID end = i + 1 < FINGER_TABLE_SIZE ? this.stepValues[i + 1] : me.getPeerID();
+                final SocketAddress current = this.routingTable.get().getFinger(i);
+
+                // A finger inside its interval stays, fixFingers may have picked it for being closer
+                if (!current.equals(me) && this.betweenTwoKeys(start, end, current.getPeerID(), true, false))
+                    continue;
+                if (!this.betweenTwoKeys(start, current.getPeerID(), peer.getPeerID(), true, false))
+                    continue;
+
+                this.routingTable.updateAndGet(table -> table.getFinger(finger).equals(current) ? table.withFinger(finger, peer) : table);
+                if (DEBUG_MODE)
+                    System.out.println("> CHORD: Learned finger " + peer + " (next = " + finger + ")");
+            }
+        }
+    }
+
+    public static Chord getNode(UUID peerID) {
+
+        return nodes.get(peerID);
+    }
+
+    public static Collection<Chord> getNodes() {
+
+        return nodes.values();
+    }
+
+    /**
+     * The position a request being handled on this thread was sent to, the first one otherwise
+     */
+    public static Chord current() {
+
+        final Chord node = handlingNode.get();
+        return node != null ? node : chordInstance;
+    }
+
+    /**
+     * Position the current thread is handling a request for, or null if it isn't handling one
+     */
+    public static UUID getHandlingNode() {
+
+        final Chord node = handlingNode.get();
+        return node != null ? node.getSelf().getPeerID() : null;
+    }
+
+    public static void setHandlingNode(UUID target) {
+
+        if (target == null)
+            handlingNode.remove();
+        else
+            handlingNode.set(nodes.get(target));
+    }
+
+    /**
+     * Whether the key falls between the predecessor and this position, which makes it the one storing it
+     */
+    public boolean isResponsibleFor(UUID key) {
+
+        final SocketAddress predecessor = this.predecessor.get();
+        return predecessor == null || this.betweenTwoKeys(predecessor.getPeerID(), this.self.get().getPeerID(), key, false, true);
+    }
+
+    private void setSuccessor(SocketAddress newSuccessor) {
 
         if (DEBUG_MODE)
             System.out.println("> CHORD: A Successor updated to " + newSuccessor);
-        this.fingerTable.set(0, newSuccessor);
-        this.successorList.set(0, newSuccessor);
+
+        final RoutingTable previous = this.routingTable.getAndUpdate(table -> table.withSuccessor(newSuccessor));
+        if (!newSuccessor.equals(previous.getSuccessor()))
+            this.membershipChanged();
     }
 
-    private SocketAddress getBestMatch(AtomicReferenceArray<SocketAddress> arr, UUID key){
+    private SocketAddress getBestMatch(List<SocketAddress> arr, UUID key, Set<SocketAddress> failed){
 
-        for (int i = arr.length() - 1; i >= 0; i--)
-            if (this.betweenTwoKeys(self.get().getPeerID(), key, arr.get(i).getPeerID(), false, false))
+        for (int i = arr.size() - 1; i >= 0; i--)
+            if (this.betweenTwoKeys(self.get().getPeerID(), key, arr.get(i).getPeerID(), false, false) && !failed.contains(arr.get(i)))
                 return arr.get(i);
             
         return null;
     }
 
 
-    public synchronized SocketAddress closestPrecedingNode(UUID key) {
+    public SocketAddress closestPrecedingNode(UUID key) {
 
-        SocketAddress bestMatchFingerTable = getBestMatch(this.fingerTable, key);
-        SocketAddress bestMatchSuccTable = getBestMatch(this.successorList, key);
+        return this.closestPrecedingNode(key, Collections.emptySet());
+    }
+
+    /**
+     * Same as closestPrecedingNode, passing over the peers that already failed to answer the lookup
+     */
+    private SocketAddress closestPrecedingNode(UUID key, Set<SocketAddress> failed) {
+
+        // Both matches come from the same table, even if it is replaced meanwhile
+        final RoutingTable table = this.routingTable.get();
+        SocketAddress bestMatchFingerTable = getBestMatch(table.getFingers(), key, failed);
+        SocketAddress bestMatchSuccTable = getBestMatch(table.getSuccessors(), key, failed);
 
         // Check successor list
 
@@ -125,70 +412,389 @@ public class Chord {
 
     public SocketAddress lookup(String chunkID, int repDegree) {
 
-        return this.findSuccessor(generateKey(chunkID, repDegree));
+        return this.lookupAsync(chunkID, repDegree).join();
+    }
+
+    /**
+     * Finds the peer storing a replica, answering from the lookup cache when the key is in a known range
+     */
+    public CompletableFuture<SocketAddress> lookupAsync(String chunkID, int repDegree) {
+
+        final UUID key = generateKey(chunkID, repDegree);
+        final SocketAddress cached = this.lookupCache.get(key);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        return this.findSuccessorAsync(key, "lookup").thenApply(successor -> {
+            this.cacheSuccessor(key, successor);
+            return successor;
+        });
+    }
+
+    /**
+     * Forgets the cached successor of a replica's key, for when that peer answered it no longer stores it
+     */
+    public void invalidateLookup(String chunkID, int repDegree) {
+
+        this.lookupCache.invalidate(generateKey(chunkID, repDegree));
+    }
+
+    private void cacheSuccessor(UUID key, SocketAddress successor) {
+
+        // A lookup that could not recover answers with this peer, which is only right if the key is its own
+        if (!successor.equals(self.get()) || this.isResponsibleFor(key))
+            this.lookupCache.put(key, successor);
     }
 
     public UUID generateKey(String chunkID, int repDegree) {
         return normalizeToSize(UUID.nameUUIDFromBytes(StoredChunkInfo.getChunkID(chunkID, repDegree).getBytes()), FINGER_TABLE_SIZE);
     }
 
-    private SocketAddress queryPeersForSuccessorOf(UUID key) {
+    private CompletableFuture<Route<SocketAddress>> queryPeersForSuccessorOf(UUID key, long deadline, Set<SocketAddress> failed) {
 
         // Ask the closest match to find key's successor
         // If the designated peer does not answer find the next closest match
+        SocketAddress cpn = this.closestPrecedingNode(key, failed);
 
-        while (true) {
-            SocketAddress cpn = this.closestPrecedingNode(key);
+        if (cpn.equals(self.get()) || System.currentTimeMillis() >= deadline) {
+            if (DEBUG_MODE)
+                System.out.println("> CHORD: find successor failed, could not recover.");
 
-            if(cpn.equals(self.get()))
-                break;
+            return CompletableFuture.completedFuture(new Route<>(self.get(), 0, 0));
+        }
 
-            FindSuccessorResponse res = MessageHandler.sendMessage(new FindSuccessorRequest(key), cpn);
+        // Every attempt shares the lookup's deadline, so retrying can't go on past it
+        final FindSuccessorRequest request = new FindSuccessorRequest(key);
+        request.setDeadline(deadline);
 
-            if ((res != null) && (res.getStatus() != Status.ERROR))
-                return res.getAddress();
+        final long sent = System.nanoTime();
+        return MessageHandler.<FindSuccessorResponse>sendMessageAsync(request, cpn).thenCompose(res -> {
+            if ((res != null) && (res.getStatus() != Status.ERROR)) {
+                final long elapsed = System.nanoTime() - sent;
+                LookupStats.recordHop(cpn, elapsed - res.getForwardedNanos());
+                return CompletableFuture.completedFuture(new Route<>(res.getAddress(), res.getHops() + 1, elapsed));
+            }
+
+            failed.add(cpn);
+            this.removeFinger(cpn);
 
-            for(int i = 0; i < FINGER_TABLE_SIZE; i++)
-                if(this.fingerTable.get(i).equals(cpn))
-                    this.fingerTable.set(i, self.get());
-            
             if(DEBUG_MODE)
                 System.out.println("> CHORD: find successor failed, trying again.");
+
+            return this.queryPeersForSuccessorOf(key, deadline, failed);
+        });
+    }
+
+    /**
+     * Fingers are only hints, so one that didn't answer is dropped at once. A successor that missed one
+     * answer may only be busy, it stays in the successor list until the detector suspects it.
+     */
+    private void removeFinger(SocketAddress peer) {
+
+        final boolean suspected = FailureDetector.isSuspected(peer);
+        final RoutingTable previous = this.routingTable.getAndUpdate(table -> suspected ? table.withoutPeer(peer, self.get())
+                : table.withoutFinger(peer, self.get()));
+        if (suspected)
+            FailureDetector.forget(peer);
+        this.membershipChanged();
+
+        if (DEBUG_MODE && previous.getSuccessor().equals(peer))
+            System.out.println("> CHORD: A Successor updated to " + this.getSuccessor());
+    }
+
+    public Map<UUID, SocketAddress> lookupMany(Collection<UUID> keys) {
+
+        return this.lookupManyAsync(keys).join();
+    }
+
+    /**
+     * Finds the successors of many keys in a single sweep: the keys are sorted around the ring starting
+     * at this peer and the ones with the same closest preceding node are sent to it in one request
+     */
+    public CompletableFuture<Map<UUID, SocketAddress>> lookupManyAsync(Collection<UUID> keys) {
+
+        final Map<UUID, SocketAddress> cached = new HashMap<>();
+        final List<UUID> missing = new ArrayList<>();
+        for (UUID key : keys) {
+            final SocketAddress successor = this.lookupCache.get(key);
+            if (successor != null)
+                cached.put(key, successor);
+            else
+                missing.add(key);
         }
 
-        if (DEBUG_MODE)
-            System.out.println("> CHORD: find successor failed, could not recover.");
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(cached);
 
-        return self.get();
+        final long start = System.nanoTime();
+        return this.lookupManyAsync(missing, MessageHandler.currentDeadline()).thenApply(route -> {
+            LookupStats.recordLookup("lookupMany", route.getHops(), System.nanoTime() - start);
+
+            final Map<UUID, SocketAddress> successors = route.getValue();
+            successors.forEach(this::cacheSuccessor);
+            successors.putAll(cached);
+            return successors;
+        });
+    }
+
+    /**
+     * The hops of a sweep are those of its longest branch
+     */
+    private CompletableFuture<Route<Map<UUID, SocketAddress>>> lookupManyAsync(Collection<UUID> keys, long deadline) {
+
+        return this.lookupManyAsync(keys, deadline, ConcurrentHashMap.newKeySet());
+    }
+
+    private CompletableFuture<Route<Map<UUID, SocketAddress>>> lookupManyAsync(Collection<UUID> keys, long deadline, Set<SocketAddress> failed) {
+
+        final long start = System.nanoTime();
+        final Map<UUID, SocketAddress> successors = new ConcurrentHashMap<>();
+        final AtomicInteger hops = new AtomicInteger();
+
+        // Batches are resolved by the peers they are sent to, an iterative lookup resolves every key itself
+        if (Constants.ITERATIVE_LOOKUP) {
+            final CompletableFuture<?>[] lookups = keys.stream().distinct()
+                    .map(key -> this.findSuccessorAsync(key, deadline).thenAccept(route -> {
+                        successors.put(key, route.getValue());
+                        hops.accumulateAndGet(route.getHops(), Math::max);
+                    }))
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(lookups).thenApply(v -> new Route<>(successors, hops.get(), System.nanoTime() - start));
+        }
+
+        final Map<SocketAddress, List<UUID>> batches = new LinkedHashMap<>();
+        final UUID selfID = this.self.get().getPeerID();
+        final SocketAddress successor = this.getSuccessor();
+
+        final List<UUID> sortedKeys = keys.stream().distinct()
+                .sorted((a, b) -> RingKeys.compareClockwise(selfID, a, b, FINGER_TABLE_SIZE))
+                .collect(Collectors.toList());
+
+        for (UUID key : sortedKeys) {
+            // The current peer is the closest preceding node from key
+            if (this.betweenTwoKeys(selfID, successor.getPeerID(), key, false, true)) {
+                successors.put(key, successor);
+                continue;
+            }
+
+            final SocketAddress cpn = this.closestPrecedingNode(key, failed);
+            if (cpn.equals(self.get()) || System.currentTimeMillis() >= deadline) {
+                if (DEBUG_MODE)
+                    System.out.println("> CHORD: find successor failed, could not recover.");
+
+                successors.put(key, self.get());
+                continue;
+            }
+
+            batches.computeIfAbsent(cpn, (k) -> new ArrayList<>()).add(key);
+        }
+
+        final List<CompletableFuture<Void>> answers = new ArrayList<>();
+        for (Map.Entry<SocketAddress, List<UUID>> batch : batches.entrySet()) {
+            final FindSuccessorsRequest request = new FindSuccessorsRequest(batch.getValue());
+            request.setDeadline(deadline);
+
+            final long sent = System.nanoTime();
+            answers.add(MessageHandler.<FindSuccessorsResponse>sendMessageAsync(request, batch.getKey()).thenCompose(res -> {
+                if ((res != null) && (res.getStatus() != Status.ERROR)) {
+                    LookupStats.recordHop(batch.getKey(), System.nanoTime() - sent - res.getForwardedNanos());
+                    successors.putAll(res.getSuccessors());
+                    hops.accumulateAndGet(res.getHops() + 1, Math::max);
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                failed.add(batch.getKey());
+                this.removeFinger(batch.getKey());
+
+                if(DEBUG_MODE)
+                    System.out.println("> CHORD: find successors failed, trying again.");
+
+                return this.lookupManyAsync(batch.getValue(), deadline, failed).thenAccept(route -> {
+                    successors.putAll(route.getValue());
+                    hops.accumulateAndGet(route.getHops(), Math::max);
+                });
+            }));
+        }
+
+        return CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> new Route<>(successors, hops.get(), System.nanoTime() - start));
+    }
+
+    /**
+     * Same as lookupMany past the lookup cache, for routing a sweep another peer started
+     */
+    public Route<Map<UUID, SocketAddress>> findSuccessors(Collection<UUID> keys) {
+
+        return this.lookupManyAsync(keys, MessageHandler.currentDeadline()).join();
     }
 
     public SocketAddress findSuccessor(UUID key) {
 
+        return this.findSuccessorAsync(key).join();
+    }
+
+    public CompletableFuture<SocketAddress> findSuccessorAsync(UUID key) {
+
+        return this.findSuccessorAsync(key, "findSuccessor");
+    }
+
+    /**
+     * Same as findSuccessor, for routing a lookup another peer started
+     */
+    public Route<SocketAddress> routeSuccessor(UUID key) {
+
+        return this.findSuccessorAsync(key, MessageHandler.currentDeadline()).join();
+    }
+
+    private CompletableFuture<SocketAddress> findSuccessorAsync(UUID key, String operation) {
+
+        final long start = System.nanoTime();
+        return this.findSuccessorAsync(key, MessageHandler.currentDeadline()).thenApply(route -> {
+            LookupStats.recordLookup(operation, route.getHops(), System.nanoTime() - start);
+            return route.getValue();
+        });
+    }
+
+    private CompletableFuture<Route<SocketAddress>> findSuccessorAsync(UUID key, long deadline) {
+
         // The current peer is the closest preceding node from key
         if (this.betweenTwoKeys(this.self.get().getPeerID(), this.getSuccessor().getPeerID(), key, false, true))
-            return this.getSuccessor();
+            return CompletableFuture.completedFuture(new Route<>(this.getSuccessor(), 0, 0));
+
+        if (Constants.ITERATIVE_LOOKUP)
+            return this.lookupIteratively(key, deadline);
 
-        return this.queryPeersForSuccessorOf(key);
+        return this.queryPeersForSuccessorOf(key, deadline, new HashSet<>());
+    }
+
+    /**
+     * Walks the ring from this peer, asking each hop for its closest preceding node of the key instead of
+     * having it forward the lookup. Up to LOOKUP_PARALLELISM of the closest known candidates are queried
+     * at once and the first answer that brackets the key ends the lookup, so a slow hop only costs its
+     * own query and not the whole chain.
+     */
+    private CompletableFuture<Route<SocketAddress>> lookupIteratively(UUID key, long deadline) {
+
+        final IterativeLookup lookup = new IterativeLookup(key, deadline);
+        final RoutingTable table = this.routingTable.get();
+        for (SocketAddress finger : table.getFingers())
+            lookup.addCandidate(finger, 1);
+        for (SocketAddress successor : table.getSuccessors())
+            lookup.addCandidate(successor, 1);
+
+        lookup.queryNext();
+        return lookup.result.completeOnTimeout(new Route<>(self.get(), 0, 0), Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private class IterativeLookup {
+        private final UUID key;
+        private final long deadline;
+        private final long start = System.nanoTime();
+        private final CompletableFuture<Route<SocketAddress>> result = new CompletableFuture<>();
+        // Closest to the key first, measured clockwise from the candidate to the key
+        private final List<SocketAddress> candidates = new ArrayList<>();
+        private final List<SocketAddress> queried = new ArrayList<>();
+        // Hop at which each candidate was learned, the ones in this peer's table are the first
+        private final Map<SocketAddress, Integer> hops = new HashMap<>();
+        private int inFlight = 0;
+
+        IterativeLookup(UUID key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        synchronized void addCandidate(SocketAddress candidate, int hop) {
+
+            // Only peers before the key can lead to it
+            if (candidate == null || candidate.equals(self.get()) || queried.contains(candidate) || candidates.contains(candidate)
+                    || !betweenTwoKeys(self.get().getPeerID(), key, candidate.getPeerID(), false, false))
+                return;
+
+            int i = 0;
+            while (i < candidates.size() && RingKeys.compareClockwise(key, candidates.get(i).getPeerID(), candidate.getPeerID(), FINGER_TABLE_SIZE) > 0)
+                i++;
+            candidates.add(i, candidate);
+            hops.put(candidate, hop);
+        }
+
+        synchronized void queryNext() {
+
+            while (!result.isDone() && inFlight < Constants.LOOKUP_PARALLELISM && !candidates.isEmpty()
+                    && System.currentTimeMillis() < deadline) {
+                final SocketAddress candidate = candidates.remove(0);
+                queried.add(candidate);
+                inFlight++;
+
+                final ClosestPrecedingRequest request = new ClosestPrecedingRequest(key);
+                request.setDeadline(Math.min(deadline, System.currentTimeMillis() + Constants.LOOKUP_QUERY_TIMEOUT_MS));
+                final long sent = System.nanoTime();
+                MessageHandler.<ClosestPrecedingResponse>sendMessageAsync(request, candidate)
+                        .thenAccept(res -> this.answered(candidate, res, sent));
+            }
+
+            if (inFlight == 0 && !result.isDone()) {
+                if (DEBUG_MODE)
+                    System.out.println("> CHORD: find successor failed, could not recover.");
+                result.complete(new Route<>(self.get(), 0, 0));
+            }
+        }
+
+        private void answered(SocketAddress candidate, ClosestPrecedingResponse res, long sent) {
+
+            final int hop;
+            synchronized (this) {
+                inFlight--;
+                hop = hops.get(candidate);
+            }
+
+            if (res == null || res.getStatus() == Status.ERROR || res.getSuccessor() == null) {
+                removeFinger(candidate);
+            } else if (betweenTwoKeys(candidate.getPeerID(), res.getSuccessor().getPeerID(), key, false, true)
+                    || res.getAddress().equals(candidate)) {
+                // Whichever query brackets the key first wins
+                LookupStats.recordHop(candidate, System.nanoTime() - sent);
+                result.complete(new Route<>(res.getSuccessor(), hop, System.nanoTime() - start));
+                return;
+            } else {
+                LookupStats.recordHop(candidate, System.nanoTime() - sent);
+                this.addCandidate(res.getAddress(), hop + 1);
+                this.addCandidate(res.getSuccessor(), hop + 1);
+            }
+
+            this.queryNext();
+        }
     }
 
     private BatchResponse querySuccessorForStabilization() {
 
         BatchResponse batchResponses = null;
+        final List<SocketAddress> successorList = this.routingTable.get().getSuccessors();
 
-        for(int i = 0; i< this.successorList.length(); i++){
+        for(int i = 0; i< successorList.size(); i++){
 
             // Send a batch-request containing a perceived predecessor and r-list request
             GetPredecessorRequest getPredReq = new GetPredecessorRequest();
             ReconcileSuccessorListRequest recSucReq = new ReconcileSuccessorListRequest();
             Request[] requestList = {getPredReq, recSucReq};
+            this.stabilizeTask.countRpc();
             batchResponses = MessageHandler.sendMessage(new BatchRequest(requestList), this.getSuccessor());
 
             // Check for errors on the responses
             if (batchResponses == null || batchResponses.getStatus() == Status.ERROR) {
 
-                if(i != this.successorList.length() - 1){
+                // A successor that missed one answer may only be busy, it is kept until the detector suspects it
+                final SocketAddress failed = this.getSuccessor();
+                if (!FailureDetector.isSuspected(failed)) {
+                    if (DEBUG_MODE)
+                        System.out.println("> CHORD: Successor did not answer, phi = " + String.format("%.2f", FailureDetector.phi(failed)));
+                    this.stabilizeTask.speedUp();
+                    return null;
+                }
+                FailureDetector.forget(failed);
+
+                if(i != successorList.size() - 1){
 
-                    this.setSuccessor(this.successorList.get(i + 1));
+                    this.setSuccessor(successorList.get(i + 1));
 
                     if (this.DEBUG_MODE)
                         System.out.println("> CHORD: Stabilization failed. Trying next successor from list.");
@@ -234,16 +840,25 @@ public class Chord {
         GetPredecessorResponse successorsPerceivedPredecessor = (GetPredecessorResponse) batchResponses.getResponses()[0];
         ReconcileSuccessorListResponse successorsSuccList = (ReconcileSuccessorListResponse) batchResponses.getResponses()[1];
 
-        // Update successor list
+        // Update successor list, the successor's list shifted by one
         AtomicReferenceArray<SocketAddress> newSuccList = successorsSuccList.getSuccessorList();
-        for(int i = 1; i < SUCCESSOR_LIST_SIZE -1; i++){
-            this.successorList.getAndSet(i, newSuccList.get(i));
+        final List<SocketAddress> successorsOfSuccessor = new ArrayList<>();
+        for (int i = 0; i < newSuccList.length(); i++)
+            successorsOfSuccessor.add(newSuccList.get(i));
+
+        final RoutingTable previous = this.routingTable.getAndUpdate(table -> table.withSuccessorsOfSuccessor(successorsOfSuccessor));
+        for (int i = 1; i < SUCCESSOR_LIST_SIZE; i++) {
+            if (!successorsOfSuccessor.get(i - 1).equals(previous.getSuccessors().get(i))) {
+                this.membershipChanged();
+                break;
+            }
         }
 
         SocketAddress successorsPerceivedPredecessorAddr = successorsPerceivedPredecessor.getAddress();
 
         // Successor has no predecessor, notify him
         if (successorsPerceivedPredecessorAddr == null) {
+            this.stabilizeTask.countRpc();
             NotifyResponse res = MessageHandler.sendMessage(new NotifyRequest(self.get()), this.getSuccessor());
 
             if ((res == null || res.getStatus() == Status.ERROR) && DEBUG_MODE)
@@ -265,6 +880,7 @@ public class Chord {
 
         }
 
+        this.stabilizeTask.countRpc();
         NotifyResponse res = MessageHandler.sendMessage(new NotifyRequest(self.get()), this.getSuccessor());
 
         if ((res == null || res.getStatus() == Status.ERROR) && DEBUG_MODE)
@@ -272,45 +888,51 @@ public class Chord {
     }
 
     public void retrieveOwnedChunks(SocketAddress peer, UUID predecessor) {
-        final TransferChunksResponse transferChunksResponse = MessageHandler.sendMessage(
-                new TransferChunksRequest(this.self.get().getPeerID(), predecessor), peer);
-
-        if (transferChunksResponse == null) {
-            System.out.println("Error retrieving chunks from " + peer);
+        // Chunks held by another position of this peer are already in its store
+        if (Peer.isLocal(peer))
             return;
-        }
-
-        for (ChunkTransfer chunkTransfer : transferChunksResponse.getChunkTransfers()) {
-            BSDispatcher.servicePool.execute(() -> {
-                if (Store.instance().incrementSpace(chunkTransfer.getChunkSize())) {
-                    final TakeChunkResponse response = MessageHandler.sendMessage(chunkTransfer.getRequest(), peer);
-                    if (response == null || response.getStatus() != Status.SUCCESS) {
-                        System.out.println("TransferChunk: Error in response!");
-                    }
 
-                    final StoredChunkInfo chunkInfo = new StoredChunkInfo(response.getFileID(), response.getDesiredReplDegree(), response.getChunkNo(),
-                            response.getData().length, response.getnChunks(), response.getOriginalFileName(), response.getInitiatorPeer());
-
-                    try {
-                        chunkInfo.storeFile(response.getData());
-                        Store.instance().getStoredFiles().put(chunkInfo.getChunkID(), chunkInfo);
-                        Store.instance().getReplCount().addNewID(chunkInfo.getChunkID(),
-                                new PeerInfo(Peer.addressInfo, chunkTransfer.getChunkSize()), response.getReplNo());
-                        System.out.println("TransferChunk: sucessfully retrieved " + chunkInfo.getChunkID() + " from " + peer);
-                    } catch (IOException e) {
-                        System.out.println("TransferChunk: Failed to store chunk");
+        MessageHandler.<TransferChunksResponse>sendMessageAsync(new TransferChunksRequest(this.self.get().getPeerID(), predecessor), peer)
+                .thenAccept(transferChunksResponse -> {
+                    if (transferChunksResponse == null) {
+                        System.out.println("Error retrieving chunks from " + peer);
+                        return;
                     }
-                }
 
-            });
-        }
+                    for (ChunkTransfer chunkTransfer : transferChunksResponse.getChunkTransfers())
+                        if (Store.instance().incrementSpace(chunkTransfer.getChunkSize()))
+                            this.takeChunk(chunkTransfer, peer);
 
-        transferChunksResponse.getRedirects().forEach((redirect) ->{
-                    System.out.println("Got new redirect to " + StoredChunkInfo.getChunkID(redirect.getKey(), redirect.getValue().getKey()) + " for peer " + redirect.getValue().getValue().getAddress());
-                    Store.instance().getReplCount().addNewID(redirect.getKey(), redirect.getValue().getValue(), redirect.getValue().getKey());
+                    transferChunksResponse.getRedirects().forEach((redirect) ->{
+                        System.out.println("Got new redirect to " + StoredChunkInfo.getChunkID(redirect.getKey(), redirect.getValue().getKey()) + " for peer " + redirect.getValue().getValue().getAddress());
+                        Store.instance().getReplCount().addNewID(redirect.getKey(), redirect.getValue().getValue(), redirect.getValue().getKey());
+                    });
                 });
     }
 
+    private void takeChunk(ChunkTransfer chunkTransfer, SocketAddress peer) {
+        MessageHandler.<TakeChunkResponse>sendMessageAsync(chunkTransfer.getRequest(), peer).thenAccept(response -> {
+            if (response == null || response.getStatus() != Status.SUCCESS) {
+                System.out.println("TransferChunk: Error in response!");
+                Store.instance().decrementSpace(chunkTransfer.getChunkSize());
+                return;
+            }
+
+            final StoredChunkInfo chunkInfo = new StoredChunkInfo(response.getFileID(), response.getDesiredReplDegree(), response.getChunkNo(),
+                    response.getData().length, response.getnChunks(), response.getOriginalFileName(), response.getInitiatorPeer());
+
+            try {
+                chunkInfo.storeFile(response.getData());
+                Store.instance().getStoredFiles().put(chunkInfo.getChunkID(), chunkInfo);
+                Store.instance().getReplCount().addNewID(chunkInfo.getChunkID(),
+                        new PeerInfo(Peer.addressInfo, chunkTransfer.getChunkSize()), response.getReplNo());
+                System.out.println("TransferChunk: sucessfully retrieved " + chunkInfo.getChunkID() + " from " + peer);
+            } catch (IOException e) {
+                System.out.println("TransferChunk: Failed to store chunk");
+            }
+        });
+    }
+
     public boolean notify(SocketAddress newPred) {
 
         UUID candidateID = newPred.getPeerID();
@@ -321,10 +943,11 @@ public class Chord {
             if (DEBUG_MODE)
                 System.out.println("> CHORD: Predecessor updated to " + newPred);
             this.predecessor.set(newPred);
+            this.membershipChanged();
 
             if (!initialized) {
                 initialized = true;
-                this.retrieveOwnedChunks(successorList.get(0), predecessor.get().getPeerID());
+                this.retrieveOwnedChunks(this.getSuccessor(), predecessor.get().getPeerID());
                 this.retrieveOwnedChunks(predecessor.get(), predecessor.get().getPeerID());
             }
 
@@ -336,26 +959,95 @@ public class Chord {
 
     private void fixFingers() {
 
-        UUID neededID = this.stepValues[next];
+        final int finger = next.getAndUpdate(i -> (i + 1) % FINGER_TABLE_SIZE);
+        UUID neededID = this.stepValues[finger];
+        this.fixFingersTask.countRpc();
         SocketAddress newFinger = this.findSuccessor(neededID);
+        final SocketAddress current = this.routingTable.get().getFinger(finger);
 
-        if (this.fingerTable.get(next).equals(newFinger)) {
+        // The successor has to be the exact one
+        if (Constants.PROXIMITY_FINGERS && finger != 0)
+            newFinger = this.closestCandidate(finger, newFinger, current);
 
-            next = (next + 1) % FINGER_TABLE_SIZE;
+        if (current.equals(newFinger))
             return;
-        }
+
         if (DEBUG_MODE)
-            System.out.println("> CHORD: Fixing fingers was " + this.fingerTable.get(next) + " (next = " + next + ")");
+            System.out.println("> CHORD: Fixing fingers was " + current + " (next = " + finger + ")");
 
-        this.fingerTable.set(next, newFinger);
+        if (finger == 0) {
+            this.setSuccessor(newFinger);
+        } else {
+            final SocketAddress fixed = newFinger;
+            this.routingTable.updateAndGet(table -> table.withFinger(finger, fixed));
+
+            // Swapping away from a live peer of the interval only changes the round trip time, not the ring
+            if (!this.inFingerInterval(finger, current) || FailureDetector.isSuspected(current))
+                this.routingChanged();
+        }
 
         if (DEBUG_MODE)
             System.out.println("> CHORD: Added " + newFinger);
+    }
+
+
+    /**
+     * Any peer between the start of a finger's interval and the start of the next one serves as that finger,
+     * lookups take as many hops through it. Of the successor found for the interval and the peers after it
+     * that are still in the interval, keeps the one with the lowest round trip time. The current finger is
+     * kept unless that one is clearly faster, so the window of the round trip times rolling over doesn't
+     * swap between peers that are about as close.
+     */
+    private SocketAddress closestCandidate(int finger, SocketAddress successor, SocketAddress current) {
 
-        next = (next + 1) % FINGER_TABLE_SIZE;
+        if (!this.inFingerInterval(finger, successor))
+            return successor;
 
+        this.fixFingersTask.countRpc();
+        final ReconcileSuccessorListResponse res = MessageHandler.sendMessage(new ReconcileSuccessorListRequest(), successor);
+        if (res == null || res.getStatus() == Status.ERROR)
+            return successor;
+
+        SocketAddress closest = successor;
+        long closestTime = RoundTripTimes.get(successor);
+        boolean currentFound = current.equals(successor);
+        final AtomicReferenceArray<SocketAddress> candidates = res.getSuccessorList();
+        for (int i = 0; i < candidates.length(); i++) {
+            final SocketAddress candidate = candidates.get(i);
+            if (!this.inFingerInterval(finger, candidate))
+                continue;
+            currentFound |= current.equals(candidate);
+
+            final long time = RoundTripTimes.get(candidate);
+            if (time < 0) {
+                // Nothing was sent to it yet, a ping gives it a round trip time for the next round
+                this.fixFingersTask.countRpc();
+                MessageHandler.sendMessageAsync(new PingRequest(), candidate);
+                continue;
+            }
+
+            if (closestTime < 0 || time < closestTime) {
+                closest = candidate;
+                closestTime = time;
+            }
+        }
+
+        final long currentTime = RoundTripTimes.get(current);
+        if (currentFound && currentTime >= 0 && (closestTime < 0 || closestTime >= currentTime * PROXIMITY_SWITCH_RATIO))
+            return current;
+
+        return closest;
     }
 
+    /**
+     * The peer lies between the start of the finger's interval and the start of the next one
+     */
+    private boolean inFingerInterval(int finger, SocketAddress peer) {
+
+        final UUID start = this.stepValues[finger];
+        final UUID end = finger + 1 < FINGER_TABLE_SIZE ? this.stepValues[finger + 1] : self.get().getPeerID();
+        return !peer.equals(self.get()) && this.betweenTwoKeys(start, end, peer.getPeerID(), true, false);
+    }
 
     public SocketAddress getPredecessor() {
         return predecessor.get();
@@ -367,14 +1059,29 @@ public class Chord {
 
     public void checkPredecessor() {
 
-        if(this.predecessor.get() == null)
+        final SocketAddress checked = this.predecessor.get();
+        if(checked == null)
             return;
 
-        PingResponse res = MessageHandler.sendMessage(new PingRequest(), predecessor.get());
+        this.checkPredecessorTask.countRpc();
+        PingResponse res = MessageHandler.sendMessage(new PingRequest(), checked);
 
         if (res == null || res.getStatus().equals(Status.ERROR)) {
 
-            this.predecessor.set(null);
+            if (!FailureDetector.isSuspected(checked)) {
+                if (DEBUG_MODE)
+                    System.out.println("> CHORD: Predecessor did not answer, phi = " + String.format("%.2f", FailureDetector.phi(checked)));
+                this.checkPredecessorTask.speedUp();
+                return;
+            }
+
+            FailureDetector.forget(checked);
+
+            // Another thread may have replaced the predecessor already, then nothing changed here
+            if (!this.predecessor.compareAndSet(checked, null))
+                return;
+
+            this.membershipChanged();
             if(DEBUG_MODE)
                 System.out.println("> CHORD: Predecessor failed");
         }
@@ -383,46 +1090,35 @@ public class Chord {
 
     public void initThreads() {
 
-        Runnable t1 = () -> {
-            try {
-                Chord.chordInstance.stabilize();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-        };
-        Runnable t2 = () -> {
-            try {
-                Chord.chordInstance.fixFingers();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-        };
-        Runnable t3 = () -> {
-            try {
-                Chord.chordInstance.checkPredecessor();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-        };
+        // The tasks are started with a delay to avoid them running at the same time
+        this.stabilizeTask.start(0);
+        this.fixFingersTask.start(STABILIZE_INTERVAL_MS / 3);
+        this.checkPredecessorTask.start(2 * STABILIZE_INTERVAL_MS / 3);
+    }
 
-        // The threads are started with a delay to avoid them running at the same time
-        periodicThreadPool.scheduleAtFixedRate(t1, 0, STABILIZE_INTERVAL_MS, TimeUnit.MILLISECONDS);
-        periodicThreadPool.scheduleAtFixedRate(t2, 200, FIX_FINGERS_INTERVAL_MS, TimeUnit.MILLISECONDS);
-        periodicThreadPool.scheduleAtFixedRate(t3, 400, CHECK_PREDECESSOR_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    /**
+     * Peers joined or left around this position, which makes the cached lookups stale
+     */
+    private void membershipChanged() {
 
+        this.lookupCache.clear();
+        this.routingChanged();
     }
 
-    private void initKeyLookupSteps() {
+    /**
+     * A change to the ring is usually followed by others, so maintenance goes back to its fastest rate
+     */
+    private void routingChanged() {
 
-        BigInteger maxV = new BigInteger(String.valueOf(2)).pow(FINGER_TABLE_SIZE);
+        this.stabilizeTask.speedUp();
+        this.fixFingersTask.speedUp();
+        this.checkPredecessorTask.speedUp();
+    }
 
-        for (int i = 0; i < FINGER_TABLE_SIZE; i++) {
-            int step = (int) Math.pow(2, i);
-            BigInteger nextVal = Chord.convertToBigInteger(this.self.get().getPeerID());
-            nextVal = nextVal.add(new BigInteger(String.valueOf(step + ""))).mod(maxV);
-            UUID neededID = Chord.convertFromBigInteger(nextVal);
-            this.stepValues[i] = neededID;
-        }
+    private void initKeyLookupSteps() {
+
+        for (int i = 0; i < FINGER_TABLE_SIZE; i++)
+            this.stepValues[i] = RingKeys.addPowerOfTwo(this.self.get().getPeerID(), i, FINGER_TABLE_SIZE);
     }
 
     /*
@@ -431,69 +1127,17 @@ public class Chord {
 
     public boolean betweenTwoKeys(UUID lowerBound, UUID upperBound, UUID key, boolean closedLeft, boolean closedRight) {
 
-        if ((closedLeft && key.equals(lowerBound)) || (closedRight && key.equals(upperBound)))
-            return true;
-
-        if ((!closedLeft && key.equals(lowerBound)) || (!closedRight && key.equals(upperBound)))
-            return false;
-
-        // Whole circle is valid
-        if (upperBound.equals(lowerBound) && !key.equals(lowerBound))
-            return true;
-
-        return (lowerBound.compareTo(upperBound) < 0) ? (lowerBound.compareTo(key) < 0) && (key.compareTo(upperBound) < 0)
-                : !((upperBound.compareTo(key) < 0) && (key.compareTo(lowerBound) < 0));
+        return RingKeys.between(lowerBound, upperBound, key, closedLeft, closedRight);
     }
 
     public static int compareDistanceToKey(UUID a, UUID b, UUID c) {
 
-        BigInteger aInt = convertToBigInteger(a);
-        BigInteger bInt = convertToBigInteger(b);
-        BigInteger cInt = convertToBigInteger(c);
-        BigInteger acDif = aInt.subtract(cInt).abs();
-        BigInteger bcDif = bInt.subtract(cInt).abs();
-
-        return acDif.compareTo(bcDif);
-    }
-
-
-    public static BigInteger convertToBigInteger(UUID id) {
-        BigInteger lo = BigInteger.valueOf(id.getLeastSignificantBits());
-        BigInteger hi = BigInteger.valueOf(id.getMostSignificantBits());
-
-        // If any of lo/hi parts is negative interpret as unsigned
-
-        if (hi.signum() < 0)
-            hi = hi.add(B);
-
-        if (lo.signum() < 0)
-            lo = lo.add(B);
-
-        return lo.add(hi.multiply(B));
-    }
-
-    public static UUID convertFromBigInteger(BigInteger x) {
-        BigInteger[] parts = x.divideAndRemainder(B);
-        BigInteger hi = parts[0];
-        BigInteger lo = parts[1];
-
-        if (L.compareTo(lo) < 0)
-            lo = lo.subtract(B);
-
-        if (L.compareTo(hi) < 0)
-            hi = hi.subtract(B);
-
-        return new UUID(hi.longValueExact(), lo.longValueExact());
+        return RingKeys.compareDifference(a, b, c);
     }
 
     public static UUID normalizeToSize(UUID id, int bits) {
-        BigInteger maxV = new BigInteger(String.valueOf(2));
-        maxV = maxV.pow(bits);
-        BigInteger val = Chord.convertToBigInteger(id);
-        val = val.mod(maxV);
-
-        return Chord.convertFromBigInteger(val);
 
+        return RingKeys.normalize(id, bits);
     }
 
     public SocketAddress getSelf() {
@@ -509,14 +1153,27 @@ public class Chord {
         message.append("  > ").append(predecessor).append("\n");
         message.append("  - Successor" + "\n");
         message.append("  > ").append(this.getSuccessor()).append("\n");
+        final RoutingTable table = this.routingTable.get();
         message.append("  - Finger table" + "\n");
-        for (int i = 0; i < this.fingerTable.length(); i++) {
-            message.append("  > entry #").append(i).append(" - ").append(this.fingerTable.get(i)).append("\n");
+        for (int i = 0; i < table.getFingers().size(); i++) {
+            message.append("  > entry #").append(i).append(" - ").append(table.getFinger(i)).append("\n");
         }
         message.append("  - Successor list" + "\n");
-        for (int i = 0; i < this.successorList.length(); i++) {
-            message.append("  > entry #").append(i).append(" - ").append(this.successorList.get(i)).append("\n");
+        for (int i = 0; i < table.getSuccessors().size(); i++) {
+            message.append("  > entry #").append(i).append(" - ").append(table.getSuccessors().get(i)).append("\n");
         }
+        message.append("  - Maintenance" + "\n");
+        message.append("  > ").append(this.stabilizeTask).append("\n");
+        message.append("  > ").append(this.fixFingersTask).append("\n");
+        message.append("  > ").append(this.checkPredecessorTask).append("\n");
+        message.append("  - Failure detector" + "\n");
+        final SocketAddress knownPredecessor = predecessor.get();
+        if (knownPredecessor != null)
+            message.append("  > predecessor phi ").append(String.format("%.2f", FailureDetector.phi(knownPredecessor))).append("\n");
+        message.append("  > successor phi ").append(String.format("%.2f", FailureDetector.phi(this.getSuccessor()))).append("\n");
+        message.append("  - Lookup cache" + "\n");
+        message.append("  > ").append(this.lookupCache.size()).append(" ranges, ").append(this.lookupCache.getHits())
+                .append(" hits, ").append(this.lookupCache.getMisses()).append(" misses\n");
 
 
         return message.toString();
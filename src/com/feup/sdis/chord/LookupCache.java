@@ -0,0 +1,110 @@
+package com.feup.sdis.chord;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ranges of the ring whose successor is already known. A lookup that found the successor of a key shows
+ * that no peer sits between that key and the successor, so every key in between resolves to it as well.
+ * Each entry keeps the furthest key before a successor known to resolve to it.
+ */
+public class LookupCache {
+
+    private final int bits;
+    // By successor ID, the first entry at or after a key is the only one that can hold it
+    private final ConcurrentSkipListMap<UUID, Range> ranges = new ConcurrentSkipListMap<>(RingKeys::compare);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LookupCache(int bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * The successor of the key, or null if it is not in any known range
+     */
+    public SocketAddress get(UUID key) {
+
+        Map.Entry<UUID, Range> entry = ranges.ceilingEntry(key);
+        if (entry == null)
+            entry = ranges.firstEntry();
+
+        if (entry != null && entry.getValue().contains(key)) {
+            hits.incrementAndGet();
+            return entry.getValue().successor;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(UUID key, SocketAddress successor) {
+
+        ranges.merge(successor.getPeerID(), new Range(key, successor), this::widest);
+    }
+
+    /**
+     * Drops the range that holds the key, its successor said it isn't responsible for it anymore
+     */
+    public void invalidate(UUID key) {
+
+        Map.Entry<UUID, Range> entry = ranges.ceilingEntry(key);
+        if (entry == null)
+            entry = ranges.firstEntry();
+
+        if (entry != null && entry.getValue().contains(key))
+            ranges.remove(entry.getKey(), entry.getValue());
+    }
+
+    public void clear() {
+        ranges.clear();
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private Range widest(Range a, Range b) {
+
+        if (!a.successor.equals(b.successor))
+            return b;
+
+        final UUID successorID = a.successor.getPeerID();
+        if (a.first.equals(successorID))
+            return b;
+        if (b.first.equals(successorID))
+            return a;
+
+        // The further a key is behind the successor, the shorter the way from the successor forward to it
+        return RingKeys.compareClockwise(successorID, a.first, b.first, bits) <= 0 ? a : b;
+    }
+
+    private static class Range {
+        private final UUID first;
+        private final SocketAddress successor;
+
+        Range(UUID first, SocketAddress successor) {
+            this.first = first;
+            this.successor = successor;
+        }
+
+        boolean contains(UUID key) {
+
+            // A range that starts at the successor holds only the successor's own ID
+            if (first.equals(successor.getPeerID()))
+                return key.equals(first);
+
+            return RingKeys.between(first, successor.getPeerID(), key, true, true);
+        }
+    }
+}
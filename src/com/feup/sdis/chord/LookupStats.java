@@ -0,0 +1,141 @@
+package com.feup.sdis.chord;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Hops and latencies of the lookups started by this peer, per operation, and the time each peer took to
+ * answer a hop routed through it. A hop is measured by the peer that sent it, less the time the next peer
+ * spent waiting on hops of its own, so a slow peer shows up as itself and not as everyone before it.
+ */
+public class LookupStats {
+
+    private static final int MAX_HOPS = 32;
+    // Latencies go in powers of two of a millisecond
+    private static final int LATENCY_BUCKETS = 20;
+    private static final int SLOWEST_SHOWN = 5;
+    private static final int MIN_HOPS_FOR_SLOWEST = 3;
+
+    private static final Map<String, Histogram> operations = new ConcurrentSkipListMap<>();
+    private static final Map<String, HopTimes> peers = new ConcurrentHashMap<>();
+
+    public static void recordLookup(String operation, int hops, long nanos) {
+
+        operations.computeIfAbsent(operation, k -> new Histogram()).add(hops, nanos);
+    }
+
+    public static void recordHop(SocketAddress peer, long nanos) {
+
+        peers.computeIfAbsent(key(peer), k -> new HopTimes()).add(Math.max(0, nanos));
+    }
+
+    public static String state() {
+
+        final StringBuilder message = new StringBuilder("Lookups: " + (operations.isEmpty() ? "NONE" : "") + "\n");
+        for (Map.Entry<String, Histogram> operation : operations.entrySet())
+            operation.getValue().describe(operation.getKey(), message);
+
+        message.append("Slowest hops: ").append(peers.isEmpty() ? "NONE" : "").append("\n");
+        // Copied first, so the peers don't move while they are sorted
+        peers.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().copy()))
+                .filter(entry -> entry.getValue().count >= MIN_HOPS_FOR_SLOWEST)
+                .sorted(Comparator.comparingDouble((Map.Entry<String, HopTimes> entry) -> entry.getValue().mean()).reversed())
+                .limit(SLOWEST_SHOWN)
+                .forEach(entry -> entry.getValue().describe(entry.getKey(), message));
+
+        return message.toString();
+    }
+
+    // Positions of the same peer share its process, and so how fast it answers
+    private static String key(SocketAddress peer) {
+        return peer.getIp() + ":" + peer.getPort();
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    private static class Histogram {
+        private final long[] hops = new long[MAX_HOPS + 1];
+        private final long[] latencies = new long[LATENCY_BUCKETS];
+        private long count = 0;
+        private long hopsSum = 0;
+
+        synchronized void add(int hopCount, long nanos) {
+
+            hops[Math.min(hopCount, MAX_HOPS)]++;
+            latencies[latencyBucket(nanos)]++;
+            count++;
+            hopsSum += hopCount;
+        }
+
+        synchronized void describe(String operation, StringBuilder message) {
+
+            message.append("  - ").append(operation).append("\n");
+            message.append("    > ").append(count).append(" lookups, ")
+                    .append(String.format("%.2f", (double) hopsSum / count)).append(" hops on average, ")
+                    .append(percentile(hops, 99)).append(" at p99\n");
+            message.append("    > hops:");
+            for (int i = 0; i < hops.length; i++)
+                if (hops[i] > 0)
+                    message.append(" ").append(i).append(i == MAX_HOPS ? "+" : "").append("=").append(hops[i]);
+            message.append("\n");
+            message.append("    > latency: p50 under ").append(1L << percentile(latencies, 50))
+                    .append("ms, p99 under ").append(1L << percentile(latencies, 99)).append("ms\n");
+        }
+
+        private static int latencyBucket(long nanos) {
+
+            final long ms = nanos / 1000000;
+            // Bucket i holds latencies under 2^i ms
+            return Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+        }
+
+        private int percentile(long[] buckets, double percentile) {
+
+            final long wanted = (long) Math.ceil(percentile / 100.0 * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= wanted)
+                    return i;
+            }
+            return buckets.length - 1;
+        }
+    }
+
+    private static class HopTimes {
+        private long count = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        synchronized void add(long nanos) {
+
+            count++;
+            sum += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        synchronized HopTimes copy() {
+
+            final HopTimes copy = new HopTimes();
+            copy.count = count;
+            copy.sum = sum;
+            copy.max = max;
+            return copy;
+        }
+
+        synchronized double mean() {
+            return (double) sum / count;
+        }
+
+        synchronized void describe(String peer, StringBuilder message) {
+
+            message.append("  > ").append(peer).append(" ").append(millis(this.mean())).append(" on average over ")
+                    .append(count).append(" hops, ").append(millis(max)).append(" at most\n");
+        }
+    }
+}
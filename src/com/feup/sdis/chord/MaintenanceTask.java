@@ -0,0 +1,96 @@
+package com.feup.sdis.chord;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A periodic task of the ring that backs off while nothing changes. Every run that sees no change doubles
+ * the interval up to the maximum, and a change anywhere in the routing state brings it back to the minimum.
+ */
+public class MaintenanceTask implements Runnable {
+
+    private final String name;
+    private final Runnable work;
+    private final ScheduledExecutorService pool;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong rpcs = new AtomicLong();
+    private long intervalMs;
+    private boolean changed = false;
+    private boolean stopped = false;
+    private ScheduledFuture<?> next;
+
+    public MaintenanceTask(String name, Runnable work, ScheduledExecutorService pool, long minIntervalMs, long maxIntervalMs) {
+        this.name = name;
+        this.work = work;
+        this.pool = pool;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.intervalMs = minIntervalMs;
+    }
+
+    public synchronized void start(long delayMs) {
+        this.next = pool.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+
+        synchronized (this) {
+            changed = false;
+        }
+
+        runs.incrementAndGet();
+        try {
+            work.run();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+
+        synchronized (this) {
+            intervalMs = changed ? minIntervalMs : Math.min(maxIntervalMs, intervalMs * 2);
+            if (!stopped && !pool.isShutdown())
+                next = pool.schedule(this, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Brings the task back to its fastest rate, moving its next run forward if it was further away
+     */
+    public synchronized void speedUp() {
+
+        changed = true;
+        if (stopped || intervalMs == minIntervalMs)
+            return;
+
+        intervalMs = minIntervalMs;
+        if (next != null && next.getDelay(TimeUnit.MILLISECONDS) > minIntervalMs && next.cancel(false))
+            next = pool.schedule(this, minIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+
+        stopped = true;
+        if (next != null)
+            next.cancel(false);
+    }
+
+    /**
+     * Counts a request sent by the task
+     */
+    public void countRpc() {
+        rpcs.incrementAndGet();
+    }
+
+    public synchronized long getIntervalMs() {
+        return intervalMs;
+    }
+
+    @Override
+    public String toString() {
+        return name + " every " + this.getIntervalMs() + " ms, " + runs.get() + " runs, " + rpcs.get() + " RPCs";
+    }
+}
@@ -0,0 +1,138 @@
+package com.feup.sdis.chord;
+
+import java.util.UUID;
+
+/**
+ * Arithmetic on the identifier ring. A key is read as an unsigned 128 bit number made of the two halves
+ * of its UUID and all operations work on those two longs, so none of them allocates.
+ */
+public class RingKeys {
+
+    /**
+     * Unsigned order of the keys
+     */
+    public static int compare(UUID a, UUID b) {
+
+        return compare(a.getMostSignificantBits(), a.getLeastSignificantBits(),
+                b.getMostSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    /**
+     * Whether the key is in the interval that goes clockwise from the lower to the upper bound.
+     * Equal bounds stand for the whole ring.
+     */
+    public static boolean between(UUID lowerBound, UUID upperBound, UUID key, boolean closedLeft, boolean closedRight) {
+
+        if ((closedLeft && key.equals(lowerBound)) || (closedRight && key.equals(upperBound)))
+            return true;
+
+        if ((!closedLeft && key.equals(lowerBound)) || (!closedRight && key.equals(upperBound)))
+            return false;
+
+        // Whole circle is valid
+        if (upperBound.equals(lowerBound))
+            return true;
+
+        return (compare(lowerBound, upperBound) < 0) ? compare(lowerBound, key) < 0 && compare(key, upperBound) < 0
+                : !(compare(upperBound, key) < 0 && compare(key, lowerBound) < 0);
+    }
+
+    /**
+     * Compares the clockwise distances from a key to two others on a ring of the given number of bits
+     */
+    public static int compareClockwise(UUID from, UUID a, UUID b, int bits) {
+
+        final long fromHi = from.getMostSignificantBits();
+        final long fromLo = from.getLeastSignificantBits();
+
+        final long aLo = a.getLeastSignificantBits() - fromLo;
+        final long aHi = mask(a.getMostSignificantBits() - fromHi - borrow(a.getLeastSignificantBits(), fromLo), bits, true);
+        final long bLo = b.getLeastSignificantBits() - fromLo;
+        final long bHi = mask(b.getMostSignificantBits() - fromHi - borrow(b.getLeastSignificantBits(), fromLo), bits, true);
+
+        return compare(aHi, mask(aLo, bits, false), bHi, mask(bLo, bits, false));
+    }
+
+    /**
+     * Compares how far two keys are from a third one, measured along the number line and not the ring
+     */
+    public static int compareDifference(UUID a, UUID b, UUID c) {
+
+        final long cHi = c.getMostSignificantBits();
+        final long cLo = c.getLeastSignificantBits();
+
+        long aHi, aLo;
+        if (compare(a, c) >= 0) {
+            aLo = a.getLeastSignificantBits() - cLo;
+            aHi = a.getMostSignificantBits() - cHi - borrow(a.getLeastSignificantBits(), cLo);
+        } else {
+            aLo = cLo - a.getLeastSignificantBits();
+            aHi = cHi - a.getMostSignificantBits() - borrow(cLo, a.getLeastSignificantBits());
+        }
+
+        long bHi, bLo;
+        if (compare(b, c) >= 0) {
+            bLo = b.getLeastSignificantBits() - cLo;
+            bHi = b.getMostSignificantBits() - cHi - borrow(b.getLeastSignificantBits(), cLo);
+        } else {
+            bLo = cLo - b.getLeastSignificantBits();
+            bHi = cHi - b.getMostSignificantBits() - borrow(cLo, b.getLeastSignificantBits());
+        }
+
+        return compare(aHi, aLo, bHi, bLo);
+    }
+
+    /**
+     * The key reduced modulo 2^bits
+     */
+    public static UUID normalize(UUID id, int bits) {
+
+        return new UUID(mask(id.getMostSignificantBits(), bits, true), mask(id.getLeastSignificantBits(), bits, false));
+    }
+
+    /**
+     * The key plus 2^exponent, modulo 2^bits
+     */
+    public static UUID addPowerOfTwo(UUID id, int exponent, int bits) {
+
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+
+        if (exponent < 64) {
+            final long step = 1L << exponent;
+            final long sum = lo + step;
+            if (Long.compareUnsigned(sum, lo) < 0)
+                hi++;
+            lo = sum;
+        } else {
+            hi += 1L << (exponent - 64);
+        }
+
+        return new UUID(mask(hi, bits, true), mask(lo, bits, false));
+    }
+
+    private static int compare(long aHi, long aLo, long bHi, long bLo) {
+
+        final int hi = Long.compareUnsigned(aHi, bHi);
+        return hi != 0 ? hi : Long.compareUnsigned(aLo, bLo);
+    }
+
+    private static long borrow(long aLo, long bLo) {
+
+        return Long.compareUnsigned(aLo, bLo) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Keeps the bits of one half of a key that fall below 2^bits
+     */
+    private static long mask(long half, int bits, boolean high) {
+
+        final int width = high ? bits - 64 : bits;
+        if (width >= 64)
+            return half;
+        if (width <= 0)
+            return 0;
+
+        return half & ((1L << width) - 1);
+    }
+}
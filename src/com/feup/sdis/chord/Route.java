@@ -0,0 +1,30 @@
+package com.feup.sdis.chord;
+
+/**
+ * Answer of a lookup along with how it was routed: the hops it took past the peer that routed it, and the
+ * time that peer spent waiting on them, which the previous hop takes out of its own measurement
+ */
+public class Route<T> {
+
+    private final T value;
+    private final int hops;
+    private final long forwardedNanos;
+
+    public Route(T value, int hops, long forwardedNanos) {
+        this.value = value;
+        this.hops = hops;
+        this.forwardedNanos = forwardedNanos;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    public long getForwardedNanos() {
+        return forwardedNanos;
+    }
+}
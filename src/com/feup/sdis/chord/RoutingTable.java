@@ -0,0 +1,139 @@
+package com.feup.sdis.chord;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Finger table and successor list of a position. A table is never changed once built: updates build a new
+ * one, which Chord publishes in a single step, so a lookup reads a consistent table without taking a lock.
+ * The first finger and the first entry of the successor list are always the successor.
+ */
+public class RoutingTable {
+
+    private final SocketAddress[] fingers;
+    private final SocketAddress[] successors;
+
+    public RoutingTable(SocketAddress self, int fingerCount, int successorCount) {
+        this.fingers = new SocketAddress[fingerCount];
+        this.successors = new SocketAddress[successorCount];
+        Arrays.fill(this.fingers, self);
+        Arrays.fill(this.successors, self);
+    }
+
+    private RoutingTable(SocketAddress[] fingers, SocketAddress[] successors) {
+        this.fingers = fingers;
+        this.successors = successors;
+    }
+
+    public SocketAddress getSuccessor() {
+        return successors[0];
+    }
+
+    public SocketAddress getFinger(int i) {
+        return fingers[i];
+    }
+
+    public List<SocketAddress> getFingers() {
+        return Collections.unmodifiableList(Arrays.asList(fingers));
+    }
+
+    public List<SocketAddress> getSuccessors() {
+        return Collections.unmodifiableList(Arrays.asList(successors));
+    }
+
+    public RoutingTable withSuccessor(SocketAddress successor) {
+
+        final SocketAddress[] newFingers = fingers.clone();
+        final SocketAddress[] newSuccessors = successors.clone();
+        newFingers[0] = successor;
+        newSuccessors[0] = successor;
+        return new RoutingTable(newFingers, newSuccessors);
+    }
+
+    /**
+     * The successor stays, the rest of the list is the successor's own list shifted by one
+     */
+    public RoutingTable withSuccessorsOfSuccessor(List<SocketAddress> successorsOfSuccessor) {
+
+        final SocketAddress[] newSuccessors = successors.clone();
+        for (int i = 1; i < newSuccessors.length; i++)
+            newSuccessors[i] = successorsOfSuccessor.get(i - 1);
+        return new RoutingTable(fingers, newSuccessors);
+    }
+
+    public RoutingTable withFinger(int i, SocketAddress finger) {
+
+        if (i == 0)
+            return this.withSuccessor(finger);
+
+        final SocketAddress[] newFingers = fingers.clone();
+        newFingers[i] = finger;
+        return new RoutingTable(newFingers, successors);
+    }
+
+    /**
+     * Places a peer known to be alive in the successor list, if it falls between two of its entries.
+     * The entries after it move down and the last one is dropped.
+     */
+    public RoutingTable withSuccessorCandidate(SocketAddress candidate, SocketAddress self) {
+
+        if (candidate.equals(self) || Arrays.asList(successors).contains(candidate))
+            return this;
+
+        UUID previous = self.getPeerID();
+        for (int i = 0; i < successors.length; i++) {
+            if (RingKeys.between(previous, successors[i].getPeerID(), candidate.getPeerID(), false, false)) {
+                final SocketAddress[] newSuccessors = successors.clone();
+                System.arraycopy(successors, i, newSuccessors, i + 1, successors.length - i - 1);
+                newSuccessors[i] = candidate;
+
+                final SocketAddress[] newFingers = fingers.clone();
+                newFingers[0] = newSuccessors[0];
+                return new RoutingTable(newFingers, newSuccessors);
+            }
+            previous = successors[i].getPeerID();
+        }
+
+        return this;
+    }
+
+    /**
+     * Drops a peer that didn't answer from the fingers only, the successor list is left as it is
+     */
+    public RoutingTable withoutFinger(SocketAddress peer, SocketAddress self) {
+
+        final SocketAddress[] newFingers = fingers.clone();
+        for (int i = 1; i < newFingers.length; i++)
+            if (newFingers[i].equals(peer))
+                newFingers[i] = self;
+        return new RoutingTable(newFingers, successors);
+    }
+
+    /**
+     * Drops a peer that failed from the fingers and the successor list, the successors after it move up.
+     * Pointing the successor at self would cut this position off the ring, so if no other successor is
+     * known the list is kept as it is.
+     */
+    public RoutingTable withoutPeer(SocketAddress peer, SocketAddress self) {
+
+        final SocketAddress[] newFingers = fingers.clone();
+        for (int i = 1; i < newFingers.length; i++)
+            if (newFingers[i].equals(peer))
+                newFingers[i] = self;
+
+        final SocketAddress[] newSuccessors = new SocketAddress[successors.length];
+        int kept = 0;
+        for (SocketAddress successor : successors)
+            if (!successor.equals(peer) && !successor.equals(self))
+                newSuccessors[kept++] = successor;
+
+        if (kept == 0 || kept == successors.length)
+            return new RoutingTable(newFingers, successors);
+
+        Arrays.fill(newSuccessors, kept, newSuccessors.length, self);
+        newFingers[0] = newSuccessors[0];
+        return new RoutingTable(newFingers, newSuccessors);
+    }
+}
@@ -1,6 +1,7 @@
 package com.feup.sdis.chord;
 
 import java.io.Serializable;
+import java.util.Objects;
 import java.util.UUID;
 
 public class SocketAddress implements Serializable {
@@ -15,6 +16,12 @@ public class SocketAddress implements Serializable {
         this.peerID = UUID.nameUUIDFromBytes(peerID.getBytes());
     }
 
+    public SocketAddress(String ip, int port, UUID peerID) {
+        this.ip = ip;
+        this.port = port;
+        this.peerID = peerID;
+    }
+
     public UUID getPeerID() {
         return peerID;
     }
@@ -46,4 +53,10 @@ public class SocketAddress implements Serializable {
         SocketAddress c = (SocketAddress) o;    
         return this.ip.equals(c.getIp()) && this.port == c.getPort() && this.peerID.equals(c.getPeerID());
     }
+
+    @Override
+    public int hashCode() {
+        // The peer ID may still be normalized after the address is created, so only the endpoint is hashed
+        return Objects.hash(ip, port);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.feup.sdis.messages;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.feup.sdis.model.ChunkBody;
+
+/**
+ * Message whose chunk body is sent raw after the encoded fields instead of being part of them
+ */
+public interface BodyMessage {
+
+    ChunkBody getBody();
+
+    void setBody(ChunkBody body);
+
+    /**
+     * File a received body is written to as it arrives, or null to keep it in memory
+     */
+    default Path getBodyDestination() throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,208 @@
+package com.feup.sdis.messages;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.*;
+import com.feup.sdis.messages.requests.chord.*;
+import com.feup.sdis.messages.responses.*;
+import com.feup.sdis.messages.responses.chord.*;
+
+/**
+ * Binary encoding of requests and responses: a type tag followed by the fields of the message.
+ * Messages without their own encoding are sent with Java serialization under the SERIALIZED tag.
+ */
+public class MessageCodec {
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    public static void encode(Object message, DataOutputStream out) throws IOException {
+
+        final MessageType type = message instanceof Request ? ((Request) message).getType()
+                : message instanceof Response ? ((Response) message).getType() : MessageType.SERIALIZED;
+
+        out.writeByte(type.ordinal());
+
+        if (type == MessageType.SERIALIZED) {
+            // Length prefixed so that an ObjectInputStream can't read past it inside a batch
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(stream)) {
+                objectOut.writeObject(message);
+            }
+            writeBytes(out, stream.toByteArray());
+        } else if (message instanceof Request) {
+            ((Request) message).encode(out);
+        } else {
+            ((Response) message).encode(out);
+        }
+    }
+
+    public static Object decode(DataInputStream in) throws IOException, ClassNotFoundException {
+
+        final int tag = in.readUnsignedByte();
+        if (tag >= TYPES.length)
+            throw new StreamCorruptedException("Unknown message type " + tag);
+
+        switch (TYPES[tag]) {
+            case SERIALIZED:
+                return new ObjectInputStream(new ByteArrayInputStream(readBytes(in))).readObject();
+            case BACKUP_LOOKUP_REQUEST:
+                return new BackupLookupRequest(in);
+            case BACKUP_REQUEST:
+                return new BackupRequest(in);
+            case BATCH_REQUEST:
+                return new BatchRequest(in);
+            case CHUNK_LOOKUP_REQUEST:
+                return new ChunkLookupRequest(in);
+            case DELETE_FILE_INFO:
+                return new DeleteFileInfo(in);
+            case DELETE_REQUEST:
+                return new DeleteRequest(in);
+            case GET_CHUNK_INFO_REQUEST:
+                return new GetChunkInfoRequest(in);
+            case GET_CHUNK_REQUEST:
+                return new GetChunkRequest(in);
+            case CLOSEST_PRECEDING_REQUEST:
+                return new ClosestPrecedingRequest(in);
+            case FIND_SUCCESSOR_REQUEST:
+                return new FindSuccessorRequest(in);
+            case GET_PREDECESSOR_REQUEST:
+                return new GetPredecessorRequest();
+            case NOTIFY_REQUEST:
+                return new NotifyRequest(in);
+            case PING_REQUEST:
+                return new PingRequest();
+            case RECONCILE_SUCCESSOR_LIST_REQUEST:
+                return new ReconcileSuccessorListRequest();
+            case TAKE_CHUNK_REQUEST:
+                return new TakeChunkRequest(in);
+            case TRANSFER_CHUNKS_REQUEST:
+                return new TransferChunksRequest(in);
+            case BACKUP_LOOKUP_RESPONSE:
+                return new BackupLookupResponse(in);
+            case BACKUP_RESPONSE:
+                return new BackupResponse(in);
+            case BATCH_RESPONSE:
+                return new BatchResponse(in);
+            case CHUNK_INFO_RESPONSE:
+                return new ChunkInfoResponse(in);
+            case CHUNK_LOOKUP_RESPONSE:
+                return new ChunkLookupResponse(in);
+            case CHUNK_RESPONSE:
+                return new ChunkResponse(in);
+            case DELETE_FILE_INFO_RESPONSE:
+                return new DeleteFileInfoResponse(in);
+            case DELETE_RESPONSE:
+                return new DeleteResponse(in);
+            case CLOSEST_PRECEDING_RESPONSE:
+                return new ClosestPrecedingResponse(in);
+            case FIND_SUCCESSOR_RESPONSE:
+                return new FindSuccessorResponse(in);
+            case GET_PREDECESSOR_RESPONSE:
+                return new GetPredecessorResponse(in);
+            case NOTIFY_RESPONSE:
+                return new NotifyResponse(in);
+            case PING_RESPONSE:
+                return new PingResponse(in);
+            case RECONCILE_SUCCESSOR_LIST_RESPONSE:
+                return new ReconcileSuccessorListResponse(in);
+            case TAKE_CHUNK_RESPONSE:
+                return new TakeChunkResponse(in);
+            case OVERLOADED_RESPONSE:
+                return new OverloadedResponse(in);
+            case FIND_SUCCESSORS_REQUEST:
+                return new FindSuccessorsRequest(in);
+            case FIND_SUCCESSORS_RESPONSE:
+                return new FindSuccessorsResponse(in);
+            case GET_ROUTING_TABLE_REQUEST:
+                return new GetRoutingTableRequest();
+            case GET_ROUTING_TABLE_RESPONSE:
+                return new GetRoutingTableResponse(in);
+            default:
+                throw new StreamCorruptedException("No decoder for message type " + TYPES[tag]);
+        }
+    }
+
+    /*
+     * FIELD HELPERS
+     */
+
+    public static void writeUUID(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    public static UUID readUUID(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null)
+            out.write(value);
+    }
+
+    public static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        final byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    public static void writeAddress(DataOutputStream out, SocketAddress address) throws IOException {
+        out.writeBoolean(address != null);
+        if (address == null)
+            return;
+
+        out.writeUTF(address.getIp());
+        out.writeInt(address.getPort());
+        writeUUID(out, address.getPeerID());
+    }
+
+    public static SocketAddress readAddress(DataInputStream in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+
+        final String ip = in.readUTF();
+        final int port = in.readInt();
+        return new SocketAddress(ip, port, readUUID(in));
+    }
+
+    public static void writeAddresses(DataOutputStream out, List<SocketAddress> addresses) throws IOException {
+        out.writeByte(addresses.size());
+        for (SocketAddress address : addresses)
+            writeAddress(out, address);
+    }
+
+    public static List<SocketAddress> readAddresses(DataInputStream in) throws IOException {
+        final int size = in.readUnsignedByte();
+        final List<SocketAddress> addresses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            addresses.add(readAddress(in));
+        return addresses;
+    }
+
+    public static void writeStatus(DataOutputStream out, Status status) throws IOException {
+        out.writeByte(status.ordinal());
+    }
+
+    public static Status readStatus(DataInputStream in) throws IOException {
+        return Status.values()[in.readUnsignedByte()];
+    }
+}
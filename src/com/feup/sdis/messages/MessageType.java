@@ -0,0 +1,44 @@
+package com.feup.sdis.messages;
+
+/**
+ * Tag written before every message by the binary codec, the ordinal is the value on the wire
+ */
+public enum MessageType {
+    SERIALIZED,
+    BACKUP_LOOKUP_REQUEST,
+    BACKUP_REQUEST,
+    BATCH_REQUEST,
+    CHUNK_LOOKUP_REQUEST,
+    DELETE_FILE_INFO,
+    DELETE_REQUEST,
+    GET_CHUNK_INFO_REQUEST,
+    GET_CHUNK_REQUEST,
+    CLOSEST_PRECEDING_REQUEST,
+    FIND_SUCCESSOR_REQUEST,
+    GET_PREDECESSOR_REQUEST,
+    NOTIFY_REQUEST,
+    PING_REQUEST,
+    RECONCILE_SUCCESSOR_LIST_REQUEST,
+    TAKE_CHUNK_REQUEST,
+    TRANSFER_CHUNKS_REQUEST,
+    BACKUP_LOOKUP_RESPONSE,
+    BACKUP_RESPONSE,
+    BATCH_RESPONSE,
+    CHUNK_INFO_RESPONSE,
+    CHUNK_LOOKUP_RESPONSE,
+    CHUNK_RESPONSE,
+    DELETE_FILE_INFO_RESPONSE,
+    DELETE_RESPONSE,
+    CLOSEST_PRECEDING_RESPONSE,
+    FIND_SUCCESSOR_RESPONSE,
+    GET_PREDECESSOR_RESPONSE,
+    NOTIFY_RESPONSE,
+    PING_RESPONSE,
+    RECONCILE_SUCCESSOR_LIST_RESPONSE,
+    TAKE_CHUNK_RESPONSE,
+    OVERLOADED_RESPONSE,
+    FIND_SUCCESSORS_REQUEST,
+    FIND_SUCCESSORS_RESPONSE,
+    GET_ROUTING_TABLE_REQUEST,
+    GET_ROUTING_TABLE_RESPONSE
+}
@@ -7,5 +7,7 @@ public enum Status {
     ERROR,
     UNCHANGED,
     CONNECTION_ERROR,
-    FILE_NOT_DELETED
+    FILE_NOT_DELETED,
+    OVERLOADED,
+    NOT_RESPONSIBLE
 }
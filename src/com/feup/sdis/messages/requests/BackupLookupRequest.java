@@ -2,15 +2,22 @@ package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.BackupLookupResponse;
 import com.feup.sdis.messages.responses.Response;
 import com.feup.sdis.model.PeerInfo;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
+import com.feup.sdis.peer.FreeSpace;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class BackupLookupRequest extends Request {
     private String fileID;
     private int chunkNo;
@@ -18,20 +25,48 @@ public class BackupLookupRequest extends Request {
     private int chunkLength;
     private SocketAddress connection;
     private boolean redirected;
+    private boolean checkResponsible;
+    // Position the chunk was assigned to, a redirected request is never sent past it
+    private SocketAddress responsible;
+
+    public BackupLookupRequest(String fileID, int chunkNo, int currReplication, SocketAddress connection, int chunkLength, boolean redirected,
+                               boolean checkResponsible) {
+        this(fileID, chunkNo, currReplication, connection, chunkLength, redirected, checkResponsible, null);
+    }
 
-    public BackupLookupRequest(String fileID, int chunkNo, int currReplication, SocketAddress connection, int chunkLength, boolean redirected) {
+    public BackupLookupRequest(String fileID, int chunkNo, int currReplication, SocketAddress connection, int chunkLength, boolean redirected,
+                               boolean checkResponsible, SocketAddress responsible) {
         this.fileID = fileID;
         this.chunkNo = chunkNo;
         this.currReplication = currReplication;
         this.connection = connection;
         this.chunkLength = chunkLength;
         this.redirected = redirected;
+        this.checkResponsible = checkResponsible;
+        this.responsible = responsible;
+    }
+
+    public BackupLookupRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.currReplication = in.readInt();
+        this.chunkLength = in.readInt();
+        this.connection = MessageCodec.readAddress(in);
+        this.redirected = in.readBoolean();
+        this.checkResponsible = in.readBoolean();
+        this.responsible = MessageCodec.readAddress(in);
     }
 
     @Override
     public Response handle() {
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
 
+        // The sender may have taken this peer from its lookup cache, and a peer that joined since may own the key
+        if (this.checkResponsible && !Chord.current().isResponsibleFor(Chord.current().generateKey(chunkID, this.currReplication))) {
+            System.out.println("> BACKUP LOOKUP: Not responsible for " + chunkID + " rep " + currReplication);
+            return new BackupLookupResponse(Status.NOT_RESPONSIBLE, Peer.addressInfo);
+        }
+
         // If it already has this chunk || doesn't have enough space ->
         boolean isStored = true;
         synchronized(Store.instance().getStoredFiles()){
@@ -49,8 +84,10 @@ public class BackupLookupRequest extends Request {
             if(!isStored)
                 Store.instance().getStoredFiles().remove(chunkID);
 
-            // Back to the beginning, traversed a full chord cycle
-            if(Store.instance().getReplCount().containsRepDegree(chunkID, this.currReplication)){
+            // Back to the beginning, traversed a full chord cycle. The other positions of the responsible peer
+            // share its redirects but are only passed through.
+            if(Store.instance().getReplCount().containsRepDegree(chunkID, this.currReplication)
+                    && (Chord.getNodes().size() == 1 || Chord.current().isResponsibleFor(Chord.current().generateKey(chunkID, this.currReplication)))){
 
                 // If it was the responsible (final == beginning), removes the redirect entry
                 System.out.println("> BACKUP LOOKUP: Failed " + this.currReplication + " of file " + chunkID);
@@ -58,14 +95,21 @@ public class BackupLookupRequest extends Request {
                 Store.instance().getReplCount().removeRepDegree(chunkID, this.currReplication);
                 return new BackupLookupResponse(Status.NO_SPACE, Peer.addressInfo);
             }
-            System.out.println("> BACKUP LOOKUP: Redirect to " + Chord.chordInstance.getSuccessor() + " - " + chunkID + " rep " + currReplication);
+
+            // Peers that gossiped they are full are skipped, up to the responsible position where the walk ends
+            final SocketAddress responsible = this.redirected && this.responsible != null ? this.responsible : Chord.current().getSelf();
+            final SocketAddress successor = Chord.current().nextPeerWithSpace(this.chunkLength, responsible);
+            if (FreeSpace.get(successor) >= this.chunkLength)
+                FreeSpace.reserve(successor, this.chunkLength);
+
+            System.out.println("> BACKUP LOOKUP: Redirect to " + successor + " - " + chunkID + " rep " + currReplication);
 
             // Responsible peer save redirect
             if(!this.redirected){
                 Store.instance().getReplCount().addNewID(chunkID, null, this.currReplication);
             }
 
-            return backupChunkInSuccessor(chunkID, fileID, chunkNo, currReplication, chunkLength, redirected);
+            return backupChunkInSuccessor(successor, responsible, chunkID, fileID, chunkNo, currReplication, chunkLength, redirected);
         }
 
         System.out.println("> BACKUP LOOKUP: Success - " + Peer.addressInfo + " - " + chunkID );
@@ -73,9 +117,8 @@ public class BackupLookupRequest extends Request {
         return new BackupLookupResponse(Status.SUCCESS, Peer.addressInfo);
     }
 
-    public static BackupLookupResponse backupChunkInSuccessor(String chunkID, String fileID, int chunkNo, int currReplication, int chunkLength, boolean redirected) {
-        // Get successor
-        final BackupLookupRequest lookupRequest = new BackupLookupRequest(fileID, chunkNo, currReplication, Chord.chordInstance.getSuccessor(), chunkLength, true);
+    public static BackupLookupResponse backupChunkInSuccessor(SocketAddress successor, SocketAddress responsible, String chunkID, String fileID, int chunkNo, int currReplication, int chunkLength, boolean redirected) {
+        final BackupLookupRequest lookupRequest = new BackupLookupRequest(fileID, chunkNo, currReplication, successor, chunkLength, true, false, responsible);
         final BackupLookupResponse lookupRequestAnswer = MessageHandler.sendMessage(lookupRequest, lookupRequest.getConnection());
 
         // This should never happen
@@ -107,6 +150,23 @@ public class BackupLookupRequest extends Request {
         return this.connection;
     }
     
+    @Override
+    public MessageType getType() {
+        return MessageType.BACKUP_LOOKUP_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(currReplication);
+        out.writeInt(chunkLength);
+        MessageCodec.writeAddress(out, connection);
+        out.writeBoolean(redirected);
+        out.writeBoolean(checkResponsible);
+        MessageCodec.writeAddress(out, responsible);
+    }
+
     @Override
     public String toString() {
         return "BackupLookupRequest{" +
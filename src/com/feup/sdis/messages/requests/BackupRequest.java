@@ -1,16 +1,24 @@
 package com.feup.sdis.messages.requests;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.BodyMessage;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.BackupResponse;
 import com.feup.sdis.messages.responses.Response;
+import com.feup.sdis.model.ChunkBody;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.Constants;
 
-public class BackupRequest extends Request {
+public class BackupRequest extends Request implements BodyMessage {
 
     private final String fileID;
     private final int chunkNo;
@@ -19,34 +27,47 @@ public class BackupRequest extends Request {
     private final int nChunks;
     private final String originalFilename;
     private final SocketAddress initiatorPeer;
-    private final byte[] chunkData;
+    private transient ChunkBody chunkBody;
 
     public BackupRequest(String fileID, int chunkNo, int desiredRepDegree,
-                         byte[] data, SocketAddress connection, int nChunks,
+                         ChunkBody chunkBody, SocketAddress connection, int nChunks,
                          String originalFilename, SocketAddress initiatorPeer) {
 
         this.fileID = fileID;
         this.chunkNo = chunkNo;
         this.connection = connection;
         this.desiredRepDegree = desiredRepDegree;
-        this.chunkData = data;
+        this.chunkBody = chunkBody;
         this.nChunks = nChunks;
         this.originalFilename = originalFilename;
         this.initiatorPeer = initiatorPeer;
     }
 
+    public BackupRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.desiredRepDegree = in.readInt();
+        this.connection = MessageCodec.readAddress(in);
+        this.nChunks = in.readInt();
+        this.originalFilename = MessageCodec.readString(in);
+        this.initiatorPeer = MessageCodec.readAddress(in);
+        this.chunkBody = ChunkBody.of(new byte[0]);
+    }
+
     @Override
     public Response handle() {
         // Space is already "reserved"
         final StoredChunkInfo newChunk = new StoredChunkInfo(fileID, desiredRepDegree, chunkNo,
-                chunkData.length, nChunks, originalFilename, initiatorPeer);
+                chunkBody.getLength(), nChunks, originalFilename, initiatorPeer);
         // If placeholder is not there, file deleted -> don't save
-        if(!Store.instance().getStoredFiles().containsKey(newChunk.getChunkID()))
+        if(!Store.instance().getStoredFiles().containsKey(newChunk.getChunkID())) {
+            chunkBody.discard();
             return new BackupResponse(Status.FILE_NOT_FOUND);
+        }
         Store.instance().getStoredFiles().put(newChunk.getChunkID(), newChunk);
 
         try {
-            newChunk.storeFile(chunkData);
+            newChunk.storeFile(chunkBody);
         } catch (IOException e) {
             System.out.println("Error storing chunk");
            return new BackupResponse(Status.ERROR);
@@ -60,6 +81,41 @@ public class BackupRequest extends Request {
         return this.connection;
     }
 
+    @Override
+    public ChunkBody getBody() {
+        return chunkBody;
+    }
+
+    @Override
+    public void setBody(ChunkBody body) {
+        this.chunkBody = body;
+    }
+
+    /**
+     * The chunk is streamed to a scratch file next to its final location and moved there once accepted.
+     * Replicas of a chunk sent to different positions of this peer arrive at once, so each position has its own.
+     */
+    @Override
+    public Path getBodyDestination() {
+        final String position = this.getTarget() != null ? "." + this.getTarget() : "";
+        return Paths.get(Constants.backupFolder + StoredChunkInfo.getChunkID(fileID, chunkNo) + position + ".part");
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.BACKUP_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(desiredRepDegree);
+        MessageCodec.writeAddress(out, connection);
+        out.writeInt(nChunks);
+        MessageCodec.writeString(out, originalFilename);
+        MessageCodec.writeAddress(out, initiatorPeer);
+    }
 
     @Override
     public String toString() {
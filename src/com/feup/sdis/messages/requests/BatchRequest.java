@@ -1,10 +1,16 @@
 package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.BatchResponse;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class BatchRequest extends Request {
 
     Request[] requests;
@@ -14,6 +20,13 @@ public class BatchRequest extends Request {
         this.requests = requests;
     }
 
+    public BatchRequest(DataInputStream in) throws IOException, ClassNotFoundException {
+
+        this.requests = new Request[in.readInt()];
+        for (int i = 0; i < this.requests.length; i++)
+            this.requests[i] = (Request) MessageCodec.decode(in);
+    }
+
     @Override
     public Response handle() {
         
@@ -36,5 +49,16 @@ public class BatchRequest extends Request {
     public SocketAddress getConnection() {
         return null;
     }
-    
+
+    @Override
+    public MessageType getType() {
+        return MessageType.BATCH_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        out.writeInt(this.requests.length);
+        for (Request request : this.requests)
+            MessageCodec.encode(request, out);
+    }
 }
\ No newline at end of file
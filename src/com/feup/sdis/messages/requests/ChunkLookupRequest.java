@@ -1,6 +1,9 @@
 package com.feup.sdis.messages.requests;
 
+import com.feup.sdis.chord.LookupStats;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.ChunkLookupResponse;
 import com.feup.sdis.messages.responses.Response;
@@ -10,6 +13,10 @@ import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class ChunkLookupRequest extends Request {
     private String fileID;
     private int chunkNo;
@@ -23,12 +30,21 @@ public class ChunkLookupRequest extends Request {
         this.connection = connection;
     }
 
+    public ChunkLookupRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.replNo = in.readInt();
+        this.connection = MessageCodec.readAddress(in);
+    }
+
     @Override
     public Response handle() {
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
         final Store store = Store.instance();
 
         SocketAddress peerWithChunk = Peer.addressInfo;
+        int redirects = 0;
+        long forwardedNanos = 0;
         PeerInfo peerInfo = store.getReplCount().getPeerAddress(chunkID, replNo);
 
         if (peerInfo == null) {
@@ -44,7 +60,9 @@ public class ChunkLookupRequest extends Request {
             System.out.println("> CHUNK LOOKUP: Redirect to " + redirectAddress + " - " + chunkID + " rep " + replNo);
 
             final ChunkLookupRequest lookupRedirect = new ChunkLookupRequest(fileID, chunkNo, replNo, redirectAddress);
+            final long sent = System.nanoTime();
             final ChunkLookupResponse redirectAnswer = MessageHandler.sendMessage(lookupRedirect, redirectAddress);
+            forwardedNanos = System.nanoTime() - sent;
 
             if (redirectAnswer == null || redirectAnswer.getAddress() == null) {
                 System.err.println("> CHUNK LOOKUP: Received null when searching for chunk " + chunkNo + " of file " + fileID + " in peer " + Peer.addressInfo);
@@ -56,11 +74,13 @@ public class ChunkLookupRequest extends Request {
                 return new ChunkLookupResponse(Status.FILE_NOT_FOUND, Peer.addressInfo);
             }
 
+            LookupStats.recordHop(redirectAddress, forwardedNanos - redirectAnswer.getForwardedNanos());
             peerWithChunk = redirectAnswer.getAddress();
+            redirects = redirectAnswer.getRedirects() + 1;
         }
 
         System.out.println("> CHUNK LOOKUP: Success! Found " + peerWithChunk + " for " + chunkID + " rep " + replNo);
-        return new ChunkLookupResponse(Status.SUCCESS, peerWithChunk);
+        return new ChunkLookupResponse(Status.SUCCESS, peerWithChunk, redirects, forwardedNanos);
     }
 
     @Override
@@ -68,6 +88,19 @@ public class ChunkLookupRequest extends Request {
         return this.connection;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.CHUNK_LOOKUP_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(replNo);
+        MessageCodec.writeAddress(out, connection);
+    }
+
     @Override
     public String toString() {
         return "ChunkLookupRequest{" +
@@ -1,11 +1,17 @@
 package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.DeleteFileInfoResponse;
 import com.feup.sdis.messages.responses.Response;
 import com.feup.sdis.model.Store;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class DeleteFileInfo extends Request {
     private final String fileID;
 
@@ -13,6 +19,10 @@ public class DeleteFileInfo extends Request {
         this.fileID = fileID;
     }
 
+    public DeleteFileInfo(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+    }
+
     @Override
     public Response handle() {
         Store.instance().getBackedUpFiles().remove(fileID);
@@ -24,6 +34,16 @@ public class DeleteFileInfo extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.DELETE_FILE_INFO;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+    }
+
     @Override
     public String toString() {
         return "DeleteFileInfo{" +
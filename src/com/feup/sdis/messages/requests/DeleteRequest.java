@@ -2,6 +2,8 @@ package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.DeleteResponse;
 import com.feup.sdis.messages.responses.Response;
@@ -12,7 +14,10 @@ import com.feup.sdis.peer.Constants;
 import com.feup.sdis.peer.MessageHandler;
 import com.feup.sdis.peer.Peer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 
 public class DeleteRequest extends Request {
     protected final String fileID;
@@ -25,6 +30,12 @@ public class DeleteRequest extends Request {
         this.replNo = replNo;
     }
 
+    public DeleteRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.replNo = in.readInt();
+    }
+
     protected DeleteResponse deleteChunk() {
         final Store store = Store.instance();
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
@@ -43,7 +54,7 @@ public class DeleteRequest extends Request {
             System.out.println("> DELETE: Redirect to " + chunkOwner + " - " + chunkID + " rep " + replNo);
 
             final DeleteRequest deleteRequest = new DeleteRequest(fileID, chunkNo, replNo);
-            final DeleteResponse deleteResponse = MessageHandler.sendMessage(deleteRequest, Chord.chordInstance.getSuccessor());
+            final DeleteResponse deleteResponse = MessageHandler.sendMessage(deleteRequest, Chord.current().getSuccessor());
 
             if (deleteResponse == null) {
                 System.out.println("> DELETE: Received null for chunk " + chunkID + ", replNo=" + replNo);
@@ -97,6 +108,18 @@ public class DeleteRequest extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.DELETE_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(replNo);
+    }
+
     @Override
     public String toString() {
         return "DeleteRequest{" +
@@ -1,12 +1,18 @@
 package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.ChunkInfoResponse;
 import com.feup.sdis.messages.responses.Response;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class GetChunkInfoRequest extends Request {
     private final String fileID;
     private final int chunkNo;
@@ -16,6 +22,11 @@ public class GetChunkInfoRequest extends Request {
         this.chunkNo = chunkNo;
     }
 
+    public GetChunkInfoRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+    }
+
     @Override
     public Response handle() {
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
@@ -33,6 +44,17 @@ public class GetChunkInfoRequest extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_CHUNK_INFO_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+    }
+
     @Override
     public String toString() {
         return "GetChunkInfoRequest{" +
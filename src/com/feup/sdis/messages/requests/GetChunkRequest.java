@@ -1,12 +1,19 @@
 package com.feup.sdis.messages.requests;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.ChunkResponse;
 import com.feup.sdis.messages.responses.Response;
+import com.feup.sdis.model.ChunkBody;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
+import com.feup.sdis.peer.Constants;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 
 public class GetChunkRequest extends Request {
@@ -18,6 +25,11 @@ public class GetChunkRequest extends Request {
         this.chunkNo = chunkNo;
     }
 
+    public GetChunkRequest(DataInputStream in) throws IOException {
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+    }
+
     @Override
     public Response handle() {
         final String chunkID = StoredChunkInfo.getChunkID(fileID, chunkNo);
@@ -27,16 +39,17 @@ public class GetChunkRequest extends Request {
         }
 
         final StoredChunkInfo storedChunkInfo = Store.instance().getStoredFiles().get(chunkID);
+        final File chunkFile = new File(Constants.backupFolder + chunkID);
 
-        try {
-            return new ChunkResponse(storedChunkInfo.getBody(), fileID, chunkNo,
-                    storedChunkInfo.getDesiredReplicationDegree(), storedChunkInfo.getnChunks(),
-                    storedChunkInfo.getOriginalFilename(), storedChunkInfo.getInitiatorPeer());
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!chunkFile.exists()) {
+            System.out.println("Could not find body of chunk " + chunkID);
+            return new ChunkResponse(Status.ERROR, fileID, chunkNo);
         }
 
-        return new ChunkResponse(Status.ERROR, fileID, chunkNo);
+        // The body is streamed from the file when the response is sent, it is never read into memory here
+        return new ChunkResponse(ChunkBody.of(chunkFile.toPath(), 0, (int) chunkFile.length()), fileID, chunkNo,
+                storedChunkInfo.getDesiredReplicationDegree(), storedChunkInfo.getnChunks(),
+                storedChunkInfo.getOriginalFilename(), storedChunkInfo.getInitiatorPeer());
     }
 
     @Override
@@ -44,6 +57,17 @@ public class GetChunkRequest extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_CHUNK_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+    }
+
     @Override
     public String toString() {
         return "GetChunkRequest{" +
@@ -1,11 +1,56 @@
 package com.feup.sdis.messages.requests;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.UUID;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.responses.Response;
 
 public abstract class Request implements Serializable {
+    // Absolute time in this peer's clock, only the remaining time is sent
+    private transient long deadline = 0;
+    // Ring position of the peer this is sent to, one peer may hold several
+    private transient UUID target;
+
     public abstract Response handle();
     public abstract SocketAddress getConnection();
-}
\ No newline at end of file
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public UUID getTarget() {
+        return target;
+    }
+
+    public void setTarget(UUID target) {
+        this.target = target;
+    }
+
+    /**
+     * Milliseconds left until the deadline, at least 1 so that a set deadline is never sent as none
+     */
+    public int getRemainingTime() {
+        if (deadline == 0)
+            return 0;
+
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Requests that don't override this are sent with Java serialization
+     */
+    public MessageType getType() {
+        return MessageType.SERIALIZED;
+    }
+
+    public void encode(DataOutputStream out) throws IOException {
+    }
+}
@@ -2,26 +2,49 @@ package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.chord.ClosestPrecedingResponse;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
 public class ClosestPrecedingRequest extends Request {
 
-    private SocketAddress addressInfo;
+    private final UUID key;
+    private final SocketAddress addressInfo;
 
     public ClosestPrecedingRequest(SocketAddress connection){
 
+        this.key = connection.getPeerID();
         this.addressInfo = connection;
     }
 
+    /**
+     * One step of an iterative lookup, asked by the peer looking for the key
+     */
+    public ClosestPrecedingRequest(UUID key){
+
+        this.key = key;
+        this.addressInfo = null;
+    }
+
+    public ClosestPrecedingRequest(DataInputStream in) throws IOException {
+        this.key = MessageCodec.readUUID(in);
+        this.addressInfo = MessageCodec.readAddress(in);
+    }
+
     @Override
     public Response handle() {
         
-        SocketAddress preeceding = Chord.chordInstance.closestPrecedingNode(addressInfo.getPeerID());
+        SocketAddress preeceding = Chord.current().closestPrecedingNode(key);
 
-        return new ClosestPrecedingResponse(Status.SUCCESS, preeceding);
+        return new ClosestPrecedingResponse(Status.SUCCESS, preeceding, Chord.current().getSuccessor());
     }
 
     @Override
@@ -30,9 +53,20 @@ public class ClosestPrecedingRequest extends Request {
         return addressInfo;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.CLOSEST_PRECEDING_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeUUID(out, key);
+        MessageCodec.writeAddress(out, addressInfo);
+    }
+
     @Override
     public String toString(){
         
-        return "req: CHD_CLOSEST_PRECEDING_NODE " + this.addressInfo;
+        return "req: CHD_CLOSEST_PRECEDING_NODE " + (this.addressInfo != null ? this.addressInfo : this.key);
     }
 }
\ No newline at end of file
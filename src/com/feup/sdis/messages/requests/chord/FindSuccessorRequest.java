@@ -1,10 +1,16 @@
 package com.feup.sdis.messages.requests.chord;
 
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.UUID;
 
 import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.Route;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
@@ -19,12 +25,16 @@ public class FindSuccessorRequest extends Request{
         this.key = key;
     }
 
+    public FindSuccessorRequest(DataInputStream in) throws IOException {
+        this.key = MessageCodec.readUUID(in);
+    }
+
     @Override
     public Response handle() {
         
-        SocketAddress succ = Chord.chordInstance.findSuccessor(key);
+        final Route<SocketAddress> succ = Chord.current().routeSuccessor(key);
 
-        return new FindSuccessorResponse(Status.SUCCESS, succ);
+        return new FindSuccessorResponse(Status.SUCCESS, succ.getValue(), succ.getHops(), succ.getForwardedNanos());
     }
 
     @Override
@@ -33,6 +43,16 @@ public class FindSuccessorRequest extends Request{
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.FIND_SUCCESSOR_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeUUID(out, key);
+    }
+
     @Override
     public String toString(){
         
@@ -0,0 +1,69 @@
+package com.feup.sdis.messages.requests.chord;
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.Route;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
+import com.feup.sdis.messages.Status;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.messages.responses.Response;
+import com.feup.sdis.messages.responses.chord.FindSuccessorsResponse;
+
+
+public class FindSuccessorsRequest extends Request{
+    private final List<UUID> keys;
+
+    public FindSuccessorsRequest(List<UUID> keys){
+
+        this.keys = keys;
+    }
+
+    public FindSuccessorsRequest(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        this.keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            this.keys.add(MessageCodec.readUUID(in));
+    }
+
+    @Override
+    public Response handle() {
+
+        final Route<Map<UUID, SocketAddress>> successors = Chord.current().findSuccessors(keys);
+
+        return new FindSuccessorsResponse(Status.SUCCESS, successors.getValue(), successors.getHops(), successors.getForwardedNanos());
+    }
+
+    @Override
+    public SocketAddress getConnection() {
+        
+        return null;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.FIND_SUCCESSORS_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        out.writeInt(keys.size());
+        for (UUID key : keys)
+            MessageCodec.writeUUID(out, key);
+    }
+
+    @Override
+    public String toString(){
+        
+        return "req: CHD_FIND_SUCCS " + keys.size() + " keys";
+    }
+}
@@ -2,6 +2,7 @@ package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
@@ -13,7 +14,7 @@ public class GetPredecessorRequest extends Request {
     @Override
     public Response handle() {
 
-        SocketAddress succ = Chord.chordInstance.getPredecessor();
+        SocketAddress succ = Chord.current().getPredecessor();
 
         return new GetPredecessorResponse(Status.SUCCESS, succ);
     }
@@ -24,6 +25,11 @@ public class GetPredecessorRequest extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_PREDECESSOR_REQUEST;
+    }
+
     @Override
     public String toString() {
 
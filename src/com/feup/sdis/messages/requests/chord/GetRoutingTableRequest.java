@@ -0,0 +1,36 @@
+package com.feup.sdis.messages.requests.chord;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
+import com.feup.sdis.messages.Status;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.messages.responses.Response;
+import com.feup.sdis.messages.responses.chord.GetRoutingTableResponse;
+
+
+public class GetRoutingTableRequest extends Request {
+
+    @Override
+    public Response handle() {
+
+        return new GetRoutingTableResponse(Status.SUCCESS, Chord.current().getRoutingTable());
+    }
+
+    @Override
+    public SocketAddress getConnection() {
+
+        return null;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_ROUTING_TABLE_REQUEST;
+    }
+
+    @Override
+    public String toString() {
+
+        return "req: CHD_GET_ROUTING ";
+    }
+}
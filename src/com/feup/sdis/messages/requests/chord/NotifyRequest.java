@@ -2,11 +2,17 @@ package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
 import com.feup.sdis.messages.responses.chord.NotifyResponse;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 
 public class NotifyRequest extends Request{
 
@@ -17,10 +23,14 @@ public class NotifyRequest extends Request{
         this.newPred = newPred; 
     }
 
+    public NotifyRequest(DataInputStream in) throws IOException {
+        this.newPred = MessageCodec.readAddress(in);
+    }
+
     @Override
     public Response handle() {
         
-        Status responseStatus = Chord.chordInstance.notify(newPred) ? Status.SUCCESS : Status.UNCHANGED;
+        Status responseStatus = Chord.current().notify(newPred) ? Status.SUCCESS : Status.UNCHANGED;
 
         return new NotifyResponse(responseStatus);
     }
@@ -31,6 +41,16 @@ public class NotifyRequest extends Request{
         return newPred;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.NOTIFY_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeAddress(out, newPred);
+    }
+
     @Override
     public String toString(){
         
@@ -1,6 +1,7 @@
 package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
@@ -24,6 +25,11 @@ public class PingRequest extends Request {
         return null;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.PING_REQUEST;
+    }
+
     @Override
     public String toString(){
         
@@ -2,6 +2,7 @@ package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
@@ -12,12 +13,16 @@ public class ReconcileSuccessorListRequest extends Request {
     @Override
     public Response handle() {
         
-        return new ReconcileSuccessorListResponse(Status.SUCCESS,Chord.chordInstance.getSuccessorList());
+        return new ReconcileSuccessorListResponse(Status.SUCCESS,Chord.current().getSuccessorList());
     }
 
     @Override
     public SocketAddress getConnection() {
         return null;
     }
-    
-}
\ No newline at end of file
+
+    @Override
+    public MessageType getType() {
+        return MessageType.RECONCILE_SUCCESSOR_LIST_REQUEST;
+    }
+}
@@ -1,6 +1,7 @@
 package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.requests.DeleteRequest;
 import com.feup.sdis.messages.responses.DeleteResponse;
@@ -9,6 +10,7 @@ import com.feup.sdis.model.Store;
 import com.feup.sdis.model.StoredChunkInfo;
 import com.feup.sdis.peer.Constants;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -19,6 +21,10 @@ public class TakeChunkRequest extends DeleteRequest {
         super(fileID, chunkNo, replNo);
     }
 
+    public TakeChunkRequest(DataInputStream in) throws IOException {
+        super(in);
+    }
+
     public static TakeChunkRequest createRequestFromChunkID(String chunkID, int replNo) {
         String[] id = chunkID.split("#");
         final String fileID = id[0];
@@ -26,6 +32,11 @@ public class TakeChunkRequest extends DeleteRequest {
         return new TakeChunkRequest(fileID, chunkNo, replNo);
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.TAKE_CHUNK_REQUEST;
+    }
+
     @Override
     public Response handle() {
         final DeleteResponse response = super.deleteChunk();
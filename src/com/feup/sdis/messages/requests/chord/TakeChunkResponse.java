@@ -1,9 +1,15 @@
 package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class TakeChunkResponse extends Response {
     private final String fileID;
     private final int chunkNo;
@@ -26,6 +32,18 @@ public class TakeChunkResponse extends Response {
         this.initiatorPeer = initiatorPeer;
     }
 
+    public TakeChunkResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.desiredReplDegree = in.readInt();
+        this.replNo = in.readInt();
+        this.data = MessageCodec.readBytes(in);
+        this.nChunks = in.readInt();
+        this.originalFileName = MessageCodec.readString(in);
+        this.initiatorPeer = MessageCodec.readAddress(in);
+    }
+
     public String getFileID() {
         return fileID;
     }
@@ -57,4 +75,22 @@ public class TakeChunkResponse extends Response {
     public int getReplNo() {
         return replNo;
     }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.TAKE_CHUNK_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(desiredReplDegree);
+        out.writeInt(replNo);
+        MessageCodec.writeBytes(out, data);
+        out.writeInt(nChunks);
+        MessageCodec.writeString(out, originalFileName);
+        MessageCodec.writeAddress(out, initiatorPeer);
+    }
 }
@@ -2,6 +2,8 @@ package com.feup.sdis.messages.requests.chord;
 
 import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.requests.Request;
 import com.feup.sdis.messages.responses.Response;
 import com.feup.sdis.messages.responses.chord.TransferChunksResponse;
@@ -10,6 +12,9 @@ import com.feup.sdis.model.PeerInfo;
 import com.feup.sdis.model.Store;
 import com.feup.sdis.peer.Peer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 public class TransferChunksRequest extends Request {
@@ -21,6 +26,11 @@ public class TransferChunksRequest extends Request {
         this.peerPredecessor = peerPredecessor;
     }
 
+    public TransferChunksRequest(DataInputStream in) throws IOException {
+        this.peerKey = MessageCodec.readUUID(in);
+        this.peerPredecessor = MessageCodec.readUUID(in);
+    }
+
     @Override
     public Response handle() {
         final List<ChunkTransfer> chunkTransfers = new ArrayList<>();
@@ -43,15 +53,26 @@ public class TransferChunksRequest extends Request {
     }
 
     private boolean isTransferable(Map.Entry<String, Map<Integer, PeerInfo>> storedChunk, Map.Entry<Integer, PeerInfo> addressEntry) {
-        return Chord.chordInstance.betweenTwoKeys(peerPredecessor, peerKey,
-                Chord.chordInstance.generateKey(storedChunk.getKey(),
+        return Chord.current().betweenTwoKeys(peerPredecessor, peerKey,
+                Chord.current().generateKey(storedChunk.getKey(),
                         addressEntry.getKey()),
                 false, true) && addressEntry.getValue().getAddress().equals(Peer.addressInfo)
-                && !Peer.addressInfo.getPeerID().equals(peerPredecessor);
+                && !Chord.current().getSelf().getPeerID().equals(peerPredecessor);
     }
 
     @Override
     public SocketAddress getConnection() {
         return null;
     }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.TRANSFER_CHUNKS_REQUEST;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeUUID(out, peerKey);
+        MessageCodec.writeUUID(out, peerPredecessor);
+    }
 }
@@ -1,8 +1,14 @@
 package com.feup.sdis.messages.responses;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class BackupLookupResponse extends Response {
 
     private final SocketAddress address;
@@ -12,10 +18,26 @@ public class BackupLookupResponse extends Response {
         this.address = address;
     }
 
+    public BackupLookupResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.address = MessageCodec.readAddress(in);
+    }
+
     public SocketAddress getAddress() {
         return address;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.BACKUP_LOOKUP_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddress(out, address);
+    }
+
     @Override
     public String toString(){
         return "BACKUP LOOKUP: " + this.address + " STATUS: " + this.getStatus();
@@ -1,9 +1,22 @@
 package com.feup.sdis.messages.responses;
 
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+
 public class BackupResponse extends Response{
     public BackupResponse(Status status) {
         super(status);
     }
+
+    public BackupResponse(DataInputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.BACKUP_RESPONSE;
+    }
 }
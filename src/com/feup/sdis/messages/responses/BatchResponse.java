@@ -1,7 +1,13 @@
 package com.feup.sdis.messages.responses;
 
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class BatchResponse extends Response {
 
     final Response[] responses;
@@ -11,9 +17,28 @@ public class BatchResponse extends Response {
         this.responses = responses;
     }
 
+    public BatchResponse(DataInputStream in) throws IOException, ClassNotFoundException {
+        super(in);
+        this.responses = new Response[in.readInt()];
+        for (int i = 0; i < this.responses.length; i++)
+            this.responses[i] = (Response) MessageCodec.decode(in);
+    }
+
     public Response[] getResponses(){
 
         return this.responses;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.BATCH_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        out.writeInt(this.responses.length);
+        for (Response response : this.responses)
+            MessageCodec.encode(response, out);
+    }
 }
@@ -1,9 +1,15 @@
 package com.feup.sdis.messages.responses;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.model.StoredChunkInfo;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 
 public class ChunkInfoResponse extends Response {
     private final String fileID;
@@ -24,6 +30,16 @@ public class ChunkInfoResponse extends Response {
         this.initiatorPeer = initiatorPeer;
     }
 
+    public ChunkInfoResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.replDegree = in.readInt();
+        this.nChunks = in.readInt();
+        this.originalFilename = MessageCodec.readString(in);
+        this.initiatorPeer = MessageCodec.readAddress(in);
+    }
+
     public ChunkInfoResponse(StoredChunkInfo fileInfo) {
         super(Status.SUCCESS);
         this.fileID = fileInfo.getFileID();
@@ -64,6 +80,22 @@ public class ChunkInfoResponse extends Response {
         return initiatorPeer;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.CHUNK_INFO_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(replDegree);
+        out.writeInt(nChunks);
+        MessageCodec.writeString(out, originalFilename);
+        MessageCodec.writeAddress(out, initiatorPeer);
+    }
+
     @Override
     public String toString() {
         return "ChunkInfoResponse{" +
@@ -1,24 +1,67 @@
 package com.feup.sdis.messages.responses;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class ChunkLookupResponse extends Response {
 
     private final SocketAddress address;
+    // Redirects followed past the peer that answered, and the time it spent waiting on them
+    private final int redirects;
+    private final long forwardedNanos;
 
     public ChunkLookupResponse(Status status, SocketAddress address) {
+        this(status, address, 0, 0);
+    }
+
+    public ChunkLookupResponse(Status status, SocketAddress address, int redirects, long forwardedNanos) {
         super(status);
         this.address = address;
+        this.redirects = redirects;
+        this.forwardedNanos = forwardedNanos;
+    }
+
+    public ChunkLookupResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.address = MessageCodec.readAddress(in);
+        this.redirects = in.readInt();
+        this.forwardedNanos = in.readLong();
     }
 
     public SocketAddress getAddress() {
         return address;
     }
 
+    public int getRedirects() {
+        return redirects;
+    }
+
+    public long getForwardedNanos() {
+        return forwardedNanos;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.CHUNK_LOOKUP_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddress(out, address);
+        out.writeInt(redirects);
+        out.writeLong(forwardedNanos);
+    }
+
     @Override
     public String toString(){
-        return "CHUNK LOOKUP: " + this.address + " STATUS: " + this.getStatus();
+        return "CHUNK LOOKUP: " + this.address + " REDIRECTS: " + this.redirects + " STATUS: " + this.getStatus();
     }
 
 }
\ No newline at end of file
@@ -1,11 +1,24 @@
 package com.feup.sdis.messages.responses;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.BodyMessage;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
+import com.feup.sdis.model.ChunkBody;
+import com.feup.sdis.model.StoredChunkInfo;
+import com.feup.sdis.peer.Constants;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-public class ChunkResponse extends Response {
-    private final byte[] data;
+
+public class ChunkResponse extends Response implements BodyMessage {
+    private transient ChunkBody body;
     private final String fileID;
     private final int chunkNo;
     private final int replDegree;
@@ -13,9 +26,9 @@ public class ChunkResponse extends Response {
     private final String originalFilename;
     private final SocketAddress initiatorPeer;
 
-    public ChunkResponse(byte[] data, String fileID, int chunkNo, int replDegree, int nChunks, String originalFilename, SocketAddress initiatorPeer) {
+    public ChunkResponse(ChunkBody body, String fileID, int chunkNo, int replDegree, int nChunks, String originalFilename, SocketAddress initiatorPeer) {
         super(Status.SUCCESS);
-        this.data = data;
+        this.body = body;
         this.fileID = fileID;
         this.chunkNo = chunkNo;
         this.replDegree = replDegree;
@@ -24,19 +37,45 @@ public class ChunkResponse extends Response {
         this.initiatorPeer = initiatorPeer;
     }
 
+    public ChunkResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.replDegree = in.readInt();
+        this.nChunks = in.readInt();
+        this.originalFilename = MessageCodec.readString(in);
+        this.initiatorPeer = MessageCodec.readAddress(in);
+    }
+
     public ChunkResponse(Status status, String fileID, int chunkNo) {
         super(status);
         this.fileID = fileID;
         this.chunkNo = chunkNo;
         this.originalFilename = null;
-        this.data = null;
+        this.body = null;
         this.replDegree = -1;
         this.nChunks = -1;
         this.initiatorPeer = null;
     }
 
-    public byte[] getData() {
-        return data;
+    @Override
+    public ChunkBody getBody() {
+        return body;
+    }
+
+    @Override
+    public void setBody(ChunkBody body) {
+        this.body = body;
+    }
+
+    /**
+     * The chunk is streamed to a scratch file in the restored folder, and copied to its offset of the
+     * restored file from there. A late answer from a replica that was given up on, or another restore of
+     * the same file, may arrive at once, so each answer gets its own.
+     */
+    @Override
+    public Path getBodyDestination() throws IOException {
+        return Files.createTempFile(Paths.get(Constants.restoredFolder), StoredChunkInfo.getChunkID(fileID, chunkNo) + ".", ".part");
     }
 
     public String getFileID() {
@@ -55,6 +94,22 @@ public class ChunkResponse extends Response {
         return replDegree;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.CHUNK_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(replDegree);
+        out.writeInt(nChunks);
+        MessageCodec.writeString(out, originalFilename);
+        MessageCodec.writeAddress(out, initiatorPeer);
+    }
+
     @Override
     public String toString() {
         return "ChunkResponse{" +
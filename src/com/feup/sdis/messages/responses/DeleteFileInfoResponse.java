@@ -1,7 +1,13 @@
 package com.feup.sdis.messages.responses;
 
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 
 public class DeleteFileInfoResponse extends Response {
     private final String fileID;
@@ -11,10 +17,26 @@ public class DeleteFileInfoResponse extends Response {
         this.fileID = fileID;
     }
 
+    public DeleteFileInfoResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fileID = MessageCodec.readString(in);
+    }
+
     public String getFileID() {
         return fileID;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.DELETE_FILE_INFO_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeString(out, fileID);
+    }
+
     @Override
     public String toString() {
         return "DeleteResponse{" +
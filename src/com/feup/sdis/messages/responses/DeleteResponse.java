@@ -1,7 +1,13 @@
 package com.feup.sdis.messages.responses;
 
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 
 public class DeleteResponse extends Response {
     private final String fileID;
@@ -15,6 +21,13 @@ public class DeleteResponse extends Response {
         this.replNo = replNo;
     }
 
+    public DeleteResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fileID = MessageCodec.readString(in);
+        this.chunkNo = in.readInt();
+        this.replNo = in.readInt();
+    }
+
     public String getFileID() {
         return fileID;
     }
@@ -27,6 +40,19 @@ public class DeleteResponse extends Response {
         return replNo;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.DELETE_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeString(out, fileID);
+        out.writeInt(chunkNo);
+        out.writeInt(replNo);
+    }
+
     @Override
     public String toString() {
         return "DeleteResponse{" +
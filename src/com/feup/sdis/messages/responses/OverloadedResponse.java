@@ -0,0 +1,31 @@
+package com.feup.sdis.messages.responses;
+
+import com.feup.sdis.messages.MessageType;
+import com.feup.sdis.messages.Status;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Sent in place of the answer to any request the peer had no room to handle
+ */
+public class OverloadedResponse extends Response {
+
+    public OverloadedResponse() {
+        super(Status.OVERLOADED);
+    }
+
+    public OverloadedResponse(DataInputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.OVERLOADED_RESPONSE;
+    }
+
+    @Override
+    public String toString() {
+        return "OverloadedResponse{status=" + getStatus() + '}';
+    }
+}
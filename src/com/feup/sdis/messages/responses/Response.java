@@ -1,7 +1,12 @@
 package com.feup.sdis.messages.responses;
 
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 
 public abstract class Response implements Serializable {
@@ -11,7 +16,22 @@ public abstract class Response implements Serializable {
         this.status = status;
     }
 
+    public Response(DataInputStream in) throws IOException {
+        this.status = MessageCodec.readStatus(in);
+    }
+
     public Status getStatus() {
         return status;
     }
+
+    /**
+     * Responses that don't override this are sent with Java serialization
+     */
+    public MessageType getType() {
+        return MessageType.SERIALIZED;
+    }
+
+    public void encode(DataOutputStream out) throws IOException {
+        MessageCodec.writeStatus(out, status);
+    }
 }
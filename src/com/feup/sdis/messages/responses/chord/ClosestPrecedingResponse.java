@@ -1,21 +1,52 @@
 package com.feup.sdis.messages.responses.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class ClosestPrecedingResponse extends Response{
     private final SocketAddress address;
+    // Successor of the peer that answered, it holds the key when the key falls before it
+    private final SocketAddress successor;
 
-    public ClosestPrecedingResponse(Status status, SocketAddress address) {
+    public ClosestPrecedingResponse(Status status, SocketAddress address, SocketAddress successor) {
         super(status);
         this.address = address;
+        this.successor = successor;
+    }
+
+    public ClosestPrecedingResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.address = MessageCodec.readAddress(in);
+        this.successor = MessageCodec.readAddress(in);
     }
 
     public SocketAddress getAddress() {
         return address;
     }
 
+    public SocketAddress getSuccessor() {
+        return successor;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.CLOSEST_PRECEDING_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddress(out, address);
+        MessageCodec.writeAddress(out, successor);
+    }
+
     @Override
     public String toString(){
         
@@ -1,24 +1,67 @@
 package com.feup.sdis.messages.responses.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class FindSuccessorResponse extends Response {
     private final SocketAddress address;
+    // How the answering peer routed the lookup, see Route
+    private final int hops;
+    private final long forwardedNanos;
 
     public FindSuccessorResponse(Status status, SocketAddress address) {
+        this(status, address, 0, 0);
+    }
+
+    public FindSuccessorResponse(Status status, SocketAddress address, int hops, long forwardedNanos) {
         super(status);
         this.address = address;
+        this.hops = hops;
+        this.forwardedNanos = forwardedNanos;
+    }
+
+    public FindSuccessorResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.address = MessageCodec.readAddress(in);
+        this.hops = in.readInt();
+        this.forwardedNanos = in.readLong();
     }
 
     public SocketAddress getAddress() {
         return address;
     }
 
+    public int getHops() {
+        return hops;
+    }
+
+    public long getForwardedNanos() {
+        return forwardedNanos;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.FIND_SUCCESSOR_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddress(out, address);
+        out.writeInt(hops);
+        out.writeLong(forwardedNanos);
+    }
+
     @Override
     public String toString(){
         
-        return "res: CHD_FIND_SUCC " + this.address+ " STATUS: " + this.getStatus();
+        return "res: CHD_FIND_SUCC " + this.address + " HOPS: " + this.hops + " STATUS: " + this.getStatus();
     }
 }
@@ -0,0 +1,77 @@
+package com.feup.sdis.messages.responses.chord;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
+import com.feup.sdis.messages.Status;
+import com.feup.sdis.messages.responses.Response;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class FindSuccessorsResponse extends Response {
+    private final Map<UUID, SocketAddress> successors;
+    // How the answering peer routed the sweep, see Route
+    private final int hops;
+    private final long forwardedNanos;
+
+    public FindSuccessorsResponse(Status status, Map<UUID, SocketAddress> successors) {
+        this(status, successors, 0, 0);
+    }
+
+    public FindSuccessorsResponse(Status status, Map<UUID, SocketAddress> successors, int hops, long forwardedNanos) {
+        super(status);
+        this.successors = successors;
+        this.hops = hops;
+        this.forwardedNanos = forwardedNanos;
+    }
+
+    public FindSuccessorsResponse(DataInputStream in) throws IOException {
+        super(in);
+        final int size = in.readInt();
+        this.successors = new HashMap<>(size);
+        for (int i = 0; i < size; i++)
+            this.successors.put(MessageCodec.readUUID(in), MessageCodec.readAddress(in));
+        this.hops = in.readInt();
+        this.forwardedNanos = in.readLong();
+    }
+
+    public Map<UUID, SocketAddress> getSuccessors() {
+        return successors;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    public long getForwardedNanos() {
+        return forwardedNanos;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.FIND_SUCCESSORS_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        out.writeInt(successors.size());
+        for (Map.Entry<UUID, SocketAddress> entry : successors.entrySet()) {
+            MessageCodec.writeUUID(out, entry.getKey());
+            MessageCodec.writeAddress(out, entry.getValue());
+        }
+        out.writeInt(hops);
+        out.writeLong(forwardedNanos);
+    }
+
+    @Override
+    public String toString(){
+        
+        return "res: CHD_FIND_SUCCS " + this.successors.size() + " keys STATUS: " + this.getStatus();
+    }
+}
@@ -1,9 +1,15 @@
 package com.feup.sdis.messages.responses.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class GetPredecessorResponse extends Response {
     private final SocketAddress address;
 
@@ -12,10 +18,26 @@ public class GetPredecessorResponse extends Response {
         this.address = address;
     }
 
+    public GetPredecessorResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.address = MessageCodec.readAddress(in);
+    }
+
     public SocketAddress getAddress() {
         return address;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_PREDECESSOR_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddress(out, address);
+    }
+
     @Override
     public String toString(){
         
@@ -0,0 +1,56 @@
+package com.feup.sdis.messages.responses.chord;
+
+import com.feup.sdis.chord.RoutingTable;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
+import com.feup.sdis.messages.Status;
+import com.feup.sdis.messages.responses.Response;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+public class GetRoutingTableResponse extends Response {
+    private final List<SocketAddress> fingers;
+    private final List<SocketAddress> successors;
+
+    public GetRoutingTableResponse(Status status, RoutingTable table) {
+        super(status);
+        this.fingers = table.getFingers();
+        this.successors = table.getSuccessors();
+    }
+
+    public GetRoutingTableResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.fingers = MessageCodec.readAddresses(in);
+        this.successors = MessageCodec.readAddresses(in);
+    }
+
+    public List<SocketAddress> getFingers() {
+        return fingers;
+    }
+
+    public List<SocketAddress> getSuccessors() {
+        return successors;
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.GET_ROUTING_TABLE_RESPONSE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        MessageCodec.writeAddresses(out, fingers);
+        MessageCodec.writeAddresses(out, successors);
+    }
+
+    @Override
+    public String toString(){
+
+        return "res: CHD_GET_ROUTING " + this.fingers.size() + " fingers STATUS: " + this.getStatus();
+    }
+}
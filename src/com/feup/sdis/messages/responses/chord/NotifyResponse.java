@@ -1,14 +1,27 @@
 package com.feup.sdis.messages.responses.chord;
 
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+
 public class NotifyResponse extends Response{
 
     public NotifyResponse(Status status) {
         super(status);
     }
 
+    public NotifyResponse(DataInputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.NOTIFY_RESPONSE;
+    }
+
     @Override
     public String toString(){
         
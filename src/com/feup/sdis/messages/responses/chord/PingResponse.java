@@ -1,14 +1,27 @@
 package com.feup.sdis.messages.responses.chord;
 
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+
 public class PingResponse extends Response{
 
     public PingResponse(Status status) {
         super(status);
     }
 
+    public PingResponse(DataInputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.PING_RESPONSE;
+    }
+
     @Override
     public String toString(){
         
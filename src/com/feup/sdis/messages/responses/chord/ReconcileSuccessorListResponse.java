@@ -1,9 +1,14 @@
 package com.feup.sdis.messages.responses.chord;
 
 import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.MessageType;
 import com.feup.sdis.messages.Status;
 import com.feup.sdis.messages.responses.Response;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ReconcileSuccessorListResponse extends Response {
@@ -15,10 +20,28 @@ public class ReconcileSuccessorListResponse extends Response {
         this.successorList = successorList; 
     }
 
+    public ReconcileSuccessorListResponse(DataInputStream in) throws IOException {
+        super(in);
+        this.successorList = new AtomicReferenceArray<>(in.readInt());
+        for (int i = 0; i < this.successorList.length(); i++)
+            this.successorList.set(i, MessageCodec.readAddress(in));
+    }
+
     public AtomicReferenceArray<SocketAddress> getSuccessorList(){
 
         return this.successorList;
     }
 
+    @Override
+    public MessageType getType() {
+        return MessageType.RECONCILE_SUCCESSOR_LIST_RESPONSE;
+    }
 
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        super.encode(out);
+        out.writeInt(this.successorList.length());
+        for (int i = 0; i < this.successorList.length(); i++)
+            MessageCodec.writeAddress(out, this.successorList.get(i));
+    }
 }
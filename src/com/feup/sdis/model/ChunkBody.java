@@ -0,0 +1,118 @@
+package com.feup.sdis.model;
+
+import com.feup.sdis.peer.SerializationUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Data of a chunk, either a region of a file on disk or a buffer already in memory.
+ * File regions are written to sockets and files without being copied into the heap.
+ */
+public class ChunkBody {
+    private final Path file;
+    private final long offset;
+    private final int length;
+    private final boolean temporary;
+    private final ByteBuffer data;
+
+    private ChunkBody(Path file, long offset, int length, boolean temporary, ByteBuffer data) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.temporary = temporary;
+        this.data = data;
+    }
+
+    public static ChunkBody of(byte[] data) {
+        return of(ByteBuffer.wrap(data));
+    }
+
+    public static ChunkBody of(ByteBuffer data) {
+        return new ChunkBody(null, 0, data.remaining(), false, data);
+    }
+
+    public static ChunkBody of(Path file, long offset, int length) {
+        return new ChunkBody(file, offset, length, false, null);
+    }
+
+    /**
+     * Body received into a scratch file, which is moved instead of copied when stored
+     */
+    public static ChunkBody temporary(Path file, int length) {
+        return new ChunkBody(file, 0, length, true, null);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public CompletableFuture<Void> writeToAsync(AsynchronousSocketChannel socket) {
+        if (data != null)
+            return SerializationUtils.writeAsync(socket, data.duplicate());
+
+        // AsynchronousSocketChannel can't be the target of transferTo, so the region is mapped instead
+        // and the kernel copies it straight from the page cache
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return SerializationUtils.writeAsync(socket, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public void writeTo(FileChannel target, long position) throws IOException {
+        final ByteBuffer buffer;
+        if (data != null) {
+            buffer = data.duplicate();
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+        }
+
+        while (buffer.hasRemaining())
+            position += target.write(buffer, position);
+    }
+
+    public void storeTo(Path destination) throws IOException {
+        if (temporary) {
+            Files.move(file, destination, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        try (FileChannel target = FileChannel.open(destination, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (data != null) {
+                this.writeTo(target, 0);
+                return;
+            }
+
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                long transferred = 0;
+                while (transferred < length)
+                    transferred += source.transferTo(offset + transferred, length - transferred, target);
+            }
+        }
+    }
+
+    /**
+     * Removes the scratch file of a received body that won't be stored
+     */
+    public void discard() {
+        if (!temporary)
+            return;
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("Failed to remove temporary chunk " + file);
+        }
+    }
+}
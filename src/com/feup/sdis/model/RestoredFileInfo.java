@@ -1,13 +1,15 @@
 package com.feup.sdis.model;
 
 import java.io.Serializable;
-import java.util.SortedMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RestoredFileInfo implements Serializable {
     final private String fileID;
     final private int desiredReplicationDegree;
-    final private SortedMap<Integer, byte[]> restoredChunks = new ConcurrentSkipListMap<>();
+    final private Set<Integer> restoredChunks = new ConcurrentSkipListSet<>();
+    final private AtomicInteger failedChunks = new AtomicInteger();
     final private int nChunks;
 
     public RestoredFileInfo(String fileID, int desiredReplicationDegree, int nChunks) {
@@ -20,7 +22,27 @@ public class RestoredFileInfo implements Serializable {
         return restoredChunks.size() == nChunks;
     }
 
-    public SortedMap<Integer, byte[]> getRestoredChunks() {
+    /**
+     * Every chunk was either restored or given up on
+     */
+    public synchronized boolean isFinished() {
+        return restoredChunks.size() + failedChunks.get() == nChunks;
+    }
+
+    /**
+     * Returns true for the call that finishes the file, so that only one thread completes it
+     */
+    public synchronized boolean markRestored(int chunkNo) {
+        restoredChunks.add(chunkNo);
+        return isFinished();
+    }
+
+    public synchronized boolean markFailed() {
+        failedChunks.incrementAndGet();
+        return isFinished();
+    }
+
+    public Set<Integer> getRestoredChunks() {
         return restoredChunks;
     }
 
@@ -4,6 +4,7 @@ import com.feup.sdis.chord.SocketAddress;
 import com.feup.sdis.peer.Constants;
 
 import java.io.*;
+import java.nio.file.Paths;
 
 public class StoredChunkInfo implements Serializable {
 
@@ -55,6 +56,10 @@ public class StoredChunkInfo implements Serializable {
         (new FileOutputStream(Constants.backupFolder + getChunkID())).write(body);
     }
 
+    public void storeFile(ChunkBody body) throws IOException {
+        body.storeTo(Paths.get(Constants.backupFolder + getChunkID()));
+    }
+
     public byte[] getBody() throws IOException {
         return getBody((new FileInputStream(Constants.backupFolder + getChunkID())));
     }
@@ -0,0 +1,278 @@
+package com.feup.sdis.peer;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.model.ChunkBody;
+import com.feup.sdis.peer.SerializationUtils.Frame;
+
+/**
+ * Socket shared by many concurrent exchanges. Every frame carries the correlation ID of its exchange,
+ * so requests are pipelined without waiting for the previous answer and responses arrive in any order.
+ */
+public class Connection {
+
+    private static final boolean DEBUG_MODE = false;
+
+    private final AsynchronousSocketChannel channel;
+    private final SocketAddress destination;
+    private final Map<Integer, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicInteger nextCorrelationID = new AtomicInteger();
+    private volatile long lastUsed;
+    private volatile boolean reused = false;
+
+    public Connection(AsynchronousSocketChannel channel, SocketAddress destination) {
+        this.channel = channel;
+        this.destination = destination;
+        this.lastUsed = System.currentTimeMillis();
+
+        try {
+            // Frames of concurrent exchanges are small, they must not wait for the previous one to be acknowledged
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            if (DEBUG_MODE)
+                System.out.println("* CONNECTION: could not disable Nagle's algorithm on connection to " + destination);
+        }
+    }
+
+    public SocketAddress getDestination() {
+        return destination;
+    }
+
+    /**
+     * A connection that already answered may have been closed by the other peer while idle
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    public boolean isOpen() {
+        return !closed.get() && channel.isOpen();
+    }
+
+    /**
+     * Counts as an exchange for idleness, for a connection handed out before its request is sent
+     */
+    public void markUsed() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Nothing is waiting for an answer and nothing was exchanged for the given time
+     */
+    public boolean isIdle(long timeoutMs) {
+        return pending.isEmpty() && System.currentTimeMillis() - lastUsed >= timeoutMs;
+    }
+
+    /**
+     * Reads frames until the channel is closed, handing every one of them to the handler
+     */
+    public void startReading(Consumer<Frame> handler) {
+        SerializationUtils.deserializeAsync(channel).whenComplete((frame, e) -> {
+            if (e != null || frame == null) {
+                this.close();
+                return;
+            }
+
+            lastUsed = System.currentTimeMillis();
+            if (!frame.getGossip().isEmpty()) {
+                FailureDetector.heartbeat(frame.getGossip().get(0));
+                if (frame.getFreeSpace() >= 0)
+                    FreeSpace.record(frame.getGossip().get(0), frame.getFreeSpace());
+            }
+            Chord.learn(frame.getGossip(), Peer.addressInfo);
+
+            // The next read is started first, so a slow handler doesn't hold back the other exchanges
+            this.startReading(handler);
+            handler.accept(frame);
+        });
+    }
+
+    /**
+     * Reads the responses to the requests sent with {@link #request}
+     */
+    public void readResponses() {
+        this.startReading(this::complete);
+    }
+
+    /**
+     * Completes with the response to the request, or null if the connection was closed or its deadline
+     * expired before it arrived. A request without a deadline gets the default timeout counted from when
+     * its frame is written, so the time spent queued behind the other frames doesn't count against it.
+     */
+    public CompletableFuture<Object> request(Request request) {
+        final int correlationID = nextCorrelationID.incrementAndGet();
+        final CompletableFuture<Object> response = new CompletableFuture<>();
+        final boolean timedFromWrite = request.getDeadline() == 0;
+        pending.put(correlationID, response);
+
+        // A late answer finds nothing waiting for it and is dropped
+        response.whenComplete((r, e) -> pending.remove(correlationID));
+        if (!timedFromWrite)
+            response.completeOnTimeout(null, Math.max(1, request.getDeadline() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+        // Closing may have swept the pending requests before this one was added
+        if (!this.isOpen()) {
+            pending.remove(correlationID);
+            response.complete(null);
+            return response;
+        }
+
+        this.send(correlationID, request, response).whenComplete((v, e) -> {
+            if (e != null && pending.remove(correlationID) != null)
+                response.complete(null);
+            else if (e == null && timedFromWrite)
+                response.completeOnTimeout(null, Constants.REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        });
+
+        return response;
+    }
+
+    /**
+     * Queues a frame, frames are written one at a time so they are never interleaved on the channel
+     */
+    public CompletableFuture<Void> send(int correlationID, Object message) {
+        return this.send(correlationID, message, null);
+    }
+
+    private CompletableFuture<Void> send(int correlationID, Object message, CompletableFuture<Object> response) {
+        final ByteBuffer frame = SerializationUtils.serialize(correlationID, message);
+        if (frame == null)
+            return CompletableFuture.failedFuture(new NotSerializableException(String.valueOf(message)));
+
+        final PendingWrite write = new PendingWrite(frame, message, response);
+        writeQueue.add(write);
+        this.drain();
+
+        return write.written;
+    }
+
+    private void drain() {
+        if (!writing.compareAndSet(false, true))
+            return;
+
+        PendingWrite write = writeQueue.poll();
+
+        // The sender gave up on these requests while they were queued, writing them would only be wasted work
+        while (write != null && write.isAbandoned()) {
+            write.written.completeExceptionally(new CancellationException());
+            write = writeQueue.poll();
+        }
+
+        if (write == null) {
+            writing.set(false);
+
+            // A frame may have been queued after the poll but before the flag was cleared
+            if (!writeQueue.isEmpty())
+                this.drain();
+            return;
+        }
+
+        if (!this.isOpen()) {
+            write.written.completeExceptionally(new ClosedChannelException());
+            writing.set(false);
+            this.drain();
+            return;
+        }
+
+        // The time left is counted from now, not from when the frame was queued
+        if (write.message instanceof Request) {
+            final Request request = (Request) write.message;
+            if (request.getDeadline() == 0)
+                request.setDeadline(System.currentTimeMillis() + Constants.REQUEST_TIMEOUT_MS);
+            SerializationUtils.setRemainingTime(write.frame, request.getRemainingTime());
+        }
+
+        final PendingWrite current = write;
+        SerializationUtils.sendAsync(channel, write.frame, write.body).whenComplete((v, e) -> {
+            if (e == null) {
+                lastUsed = System.currentTimeMillis();
+                current.written.complete(null);
+            } else {
+                // A partial frame leaves the stream unusable
+                current.written.completeExceptionally(e);
+                this.close();
+            }
+
+            writing.set(false);
+            this.drain();
+        });
+    }
+
+    private void complete(Frame frame) {
+        final CompletableFuture<Object> response = pending.remove(frame.getCorrelationID());
+        if (response != null) {
+            reused = true;
+            if (response.complete(frame.getMessage()))
+                return;
+        }
+
+        if (DEBUG_MODE)
+            System.out.println("* CONNECTION: unexpected response " + frame.getCorrelationID() + " from " + destination);
+
+        // Nobody waits for a late answer, so its body is dropped here
+        final ChunkBody body = SerializationUtils.getBody(frame.getMessage());
+        if (body != null)
+            body.discard();
+    }
+
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (DEBUG_MODE)
+                System.out.println("* CONNECTION: failed to close connection to " + destination);
+        }
+
+        for (Integer correlationID : pending.keySet()) {
+            final CompletableFuture<Object> response = pending.remove(correlationID);
+            if (response != null)
+                response.complete(null);
+        }
+
+        this.drain();
+    }
+
+    private static class PendingWrite {
+        private final ByteBuffer frame;
+        private final Object message;
+        private final ChunkBody body;
+        // Answer the request waits for, null for the responses this side sends
+        private final CompletableFuture<Object> response;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        PendingWrite(ByteBuffer frame, Object message, CompletableFuture<Object> response) {
+            this.frame = frame;
+            this.message = message;
+            this.body = SerializationUtils.getBody(message);
+            this.response = response;
+        }
+
+        boolean isAbandoned() {
+            return response != null && response.isDone();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.feup.sdis.peer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.feup.sdis.chord.SocketAddress;
+
+/**
+ * Keeps one connection per destination peer, shared by every exchange with it and with all its positions
+ */
+public class ConnectionPool {
+
+    private static final boolean DEBUG_MODE = false;
+    private static final int IDLE_TIMEOUT_MS = 30000;
+    private static final int EVICTION_INTERVAL_MS = 5000;
+
+    // Keyed by ip:port, the positions of a peer only differ in their ID
+    private final Map<String, CompletableFuture<Connection>> connections = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    public ConnectionPool() {
+
+        evictionExecutor.scheduleAtFixedRate(this::evictIdle, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Completes with the open connection to the destination, or with a new one if there is none.
+     * Callers that arrive while it is being opened wait for the same connection.
+     */
+    public CompletableFuture<Connection> acquire(SocketAddress destination) {
+
+        return connections.compute(destination.getIp() + ":" + destination.getPort(), (key, current) -> {
+            if (!isUsable(current))
+                return this.connect(destination);
+
+            // Marked under the same lock eviction takes, so it isn't evicted before the request is sent
+            if (current.isDone())
+                current.join().markUsed();
+            return current;
+        });
+    }
+
+    private static boolean isUsable(CompletableFuture<Connection> connection) {
+
+        if (connection == null || connection.isCompletedExceptionally())
+            return false;
+
+        return !connection.isDone() || connection.join().isOpen();
+    }
+
+    private CompletableFuture<Connection> connect(SocketAddress destination) {
+
+        final CompletableFuture<Connection> future = new CompletableFuture<>();
+        final AsynchronousSocketChannel channel;
+        try {
+            channel = AsynchronousSocketChannel.open();
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        channel.connect(new InetSocketAddress(destination.getIp(), destination.getPort()), null,
+                new CompletionHandler<Void, Void>() {
+                    @Override
+                    public void completed(Void result, Void attachment) {
+                        if (DEBUG_MODE)
+                            System.out.println("* POOL: opened connection to " + destination);
+
+                        final Connection connection = new Connection(channel, destination);
+                        connection.readResponses();
+                        future.complete(connection);
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable, Void attachment) {
+                        try {
+                            channel.close();
+                        } catch (IOException e) {
+                            if (DEBUG_MODE)
+                                System.out.println("* POOL: failed to close connection to " + destination);
+                        }
+                        future.completeExceptionally(throwable);
+                    }
+                });
+
+        return future;
+    }
+
+    private void evictIdle() {
+
+        for (Map.Entry<String, CompletableFuture<Connection>> entry : connections.entrySet()) {
+            final CompletableFuture<Connection> future = entry.getValue();
+            if (!future.isDone())
+                continue;
+
+            if (future.isCompletedExceptionally()) {
+                connections.remove(entry.getKey(), future);
+                continue;
+            }
+
+            // Checked and removed in one step, acquire can't hand it out in between
+            final Connection connection = future.join();
+            final boolean[] evicted = {false};
+            connections.computeIfPresent(entry.getKey(), (key, current) -> {
+                if (current != future || (connection.isOpen() && !connection.isIdle(IDLE_TIMEOUT_MS)))
+                    return current;
+
+                evicted[0] = true;
+                return null;
+            });
+
+            if (evicted[0]) {
+                if (DEBUG_MODE)
+                    System.out.println("* POOL: evicted connection to " + entry.getKey());
+
+                connection.close();
+            }
+        }
+    }
+
+    public void shutdown() {
+
+        evictionExecutor.shutdownNow();
+        for (CompletableFuture<Connection> future : connections.values())
+            future.thenAccept(Connection::close);
+
+        connections.clear();
+    }
+}
@@ -15,5 +15,26 @@ public class Constants {
     public static final String idSeparation = "#";
     public static final int REQUEST_RETRY_INTERVAL_MS = 10000;
     public static final int MAX_REQUEST_RETRIES = 5;
+    public static final int REQUEST_TIMEOUT_MS = Integer.getInteger("sdis.requestTimeout", 5000);
+    public static final int MAX_HANDLER_THREADS = Integer.getInteger("sdis.handlerThreads", 64);
+    public static final int MAX_QUEUED_REQUESTS = Integer.getInteger("sdis.handlerQueue", 1024);
+    // Width of the identifier ring, every peer of a ring must use the same
+    public static final int ID_BITS = Integer.getInteger("sdis.idBits", 8);
+    // Positions this peer takes on the ring, a peer with more disk can take a larger share of the keys
+    public static final int VIRTUAL_NODES = Integer.getInteger("sdis.virtualNodes", 1);
+    // Lookups are forwarded from peer to peer by default, -Dsdis.lookup=iterative has the initiator ask each hop itself
+    public static final boolean ITERATIVE_LOOKUP = "iterative".equals(System.getProperty("sdis.lookup"));
+    // Queries an iterative lookup keeps in flight at once
+    public static final int LOOKUP_PARALLELISM = Integer.getInteger("sdis.lookupAlpha", 3);
+    // Time an iterative lookup gives each query before moving on to the other candidates
+    public static final int LOOKUP_QUERY_TIMEOUT_MS = Integer.getInteger("sdis.lookupQueryTimeout", 500);
+    // Fingers are picked among the peers of their interval by round trip time, -Dsdis.proximityFingers=false takes the first one
+    public static final boolean PROXIMITY_FINGERS = Boolean.parseBoolean(System.getProperty("sdis.proximityFingers", "true"));
+    // Threads running the maintenance of every position of this peer
+    public static final int MAINTENANCE_THREADS = Integer.getInteger("sdis.maintenanceThreads", 3 * VIRTUAL_NODES);
+    // Suspicion past which a predecessor or successor that doesn't answer is taken as failed, higher waits longer
+    public static final double PHI_THRESHOLD = Double.parseDouble(System.getProperty("sdis.phiThreshold", "8"));
+    // Chunks a backup keeps in flight to each peer, the others wait so they don't time out queued on its connection
+    public static final int BACKUP_WINDOW = Integer.getInteger("sdis.backupWindow", 8);
 }
 
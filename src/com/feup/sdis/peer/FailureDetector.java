@@ -0,0 +1,97 @@
+package com.feup.sdis.peer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.feup.sdis.chord.SocketAddress;
+
+/**
+ * Phi accrual failure detector. Every message that arrives from a peer is a heartbeat, and the gaps between
+ * them give the distribution the next one is expected from. Phi is how unlikely it is that the peer is still
+ * alive given the time since its last message: a failed request only counts as a failure once phi is past
+ * the threshold, so a slow or busy peer isn't dropped on its first timeout.
+ */
+public class FailureDetector {
+
+    private static final int WINDOW = 100;
+    // Messages closer than this are one burst, their gaps say nothing about the heartbeat rate
+    private static final long MIN_GAP_MS = 100;
+    private static final double MIN_STD_DEVIATION_MS = 500;
+    private static final Map<String, History> histories = new ConcurrentHashMap<>();
+
+    public static void heartbeat(SocketAddress peer) {
+
+        histories.computeIfAbsent(key(peer), k -> new History()).arrived(System.currentTimeMillis());
+    }
+
+    /**
+     * Suspicion that the peer failed, 0 for the positions of this peer and infinity for a peer never heard of
+     */
+    public static double phi(SocketAddress peer) {
+
+        if (Peer.isLocal(peer))
+            return 0;
+
+        final History history = histories.get(key(peer));
+        return history == null ? Double.POSITIVE_INFINITY : history.phi(System.currentTimeMillis());
+    }
+
+    public static boolean isSuspected(SocketAddress peer) {
+
+        return phi(peer) > Constants.PHI_THRESHOLD;
+    }
+
+    /**
+     * Drops what was learned of a peer taken as failed, if it comes back its rate is measured again
+     */
+    public static void forget(SocketAddress peer) {
+
+        histories.remove(key(peer));
+    }
+
+    // Positions of the same peer share its process, and so its liveness
+    private static String key(SocketAddress peer) {
+        return peer.getIp() + ":" + peer.getPort();
+    }
+
+    private static class History {
+        private final Deque<Long> gaps = new ArrayDeque<>(WINDOW);
+        private long last = -1;
+        private long sum = 0;
+        private long squaresSum = 0;
+
+        synchronized void arrived(long now) {
+
+            final long gap = now - last;
+            if (last >= 0 && gap >= MIN_GAP_MS) {
+                if (gaps.size() == WINDOW) {
+                    final long oldest = gaps.removeFirst();
+                    sum -= oldest;
+                    squaresSum -= oldest * oldest;
+                }
+                gaps.addLast(gap);
+                sum += gap;
+                squaresSum += gap * gap;
+            }
+            last = now;
+        }
+
+        synchronized double phi(long now) {
+
+            // A single message gives no rate to compare against
+            if (gaps.isEmpty())
+                return Double.POSITIVE_INFINITY;
+
+            final double mean = (double) sum / gaps.size();
+            final double variance = (double) squaresSum / gaps.size() - mean * mean;
+            final double deviation = Math.max(Math.sqrt(Math.max(variance, 0)), MIN_STD_DEVIATION_MS);
+
+            // Logistic approximation of the normal distribution's tail
+            final double y = (now - last - mean) / deviation;
+            final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            return now - last > mean ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e));
+        }
+    }
+}
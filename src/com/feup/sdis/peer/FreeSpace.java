@@ -0,0 +1,81 @@
+package com.feup.sdis.peer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.model.Store;
+
+/**
+ * Free disk space of the other peers, gossiped on every message they send. A peer that can't store a chunk
+ * looks here for a nearby one that can, instead of asking its successors one at a time.
+ */
+public class FreeSpace {
+
+    // Older than this the peer may have filled up since
+    private static final long WINDOW_MS = 30000;
+    private static final Map<String, Sample> samples = new ConcurrentHashMap<>();
+
+    /**
+     * Space this peer has left, sent with each of its messages
+     */
+    public static int local() {
+
+        return Constants.MAX_OCCUPIED_DISK_SPACE - Store.instance().getUsedDiskSpace();
+    }
+
+    public static void record(SocketAddress peer, int bytes) {
+
+        samples.put(key(peer), new Sample(peer, bytes, System.currentTimeMillis()));
+    }
+
+    /**
+     * Peers heard from recently, by the position they last sent from
+     */
+    public static List<SocketAddress> knownPeers() {
+
+        final long now = System.currentTimeMillis();
+        return samples.values().stream().filter(sample -> now - sample.takenAt <= WINDOW_MS)
+                .map(sample -> sample.peer).collect(Collectors.toList());
+    }
+
+    /**
+     * Free space of the peer in bytes, or -1 if it wasn't heard from recently
+     */
+    public static int get(SocketAddress peer) {
+
+        if (Peer.isLocal(peer))
+            return local();
+
+        final Sample sample = samples.get(key(peer));
+        return sample == null || System.currentTimeMillis() - sample.takenAt > WINDOW_MS ? -1 : sample.bytes;
+    }
+
+    /**
+     * Takes a chunk sent to the peer out of its known space until it gossips again, so the chunks backed up
+     * at the same time aren't all sent to the same peer
+     */
+    public static void reserve(SocketAddress peer, int bytes) {
+
+        samples.computeIfPresent(key(peer), (k, sample) -> new Sample(sample.peer, sample.bytes - bytes, sample.takenAt));
+    }
+
+    // Positions of the same peer share its store, and so its free space
+    private static String key(SocketAddress peer) {
+        return peer.getIp() + ":" + peer.getPort();
+    }
+
+    private static class Sample {
+        private final SocketAddress peer;
+        private final int bytes;
+        private final long takenAt;
+
+        Sample(SocketAddress peer, int bytes, long takenAt) {
+            this.peer = peer;
+            this.bytes = bytes;
+            this.takenAt = takenAt;
+        }
+    }
+}
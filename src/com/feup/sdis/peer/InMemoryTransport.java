@@ -0,0 +1,107 @@
+package com.feup.sdis.peer;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.messages.responses.Response;
+
+/**
+ * Runs many peers in one JVM: each one is a position created with its own address, and a request sent to it
+ * is handled in process after the given one way latency. A peer that is down doesn't answer, like one whose
+ * process is gone. Messages are handed over as they are, the same way requests between the positions of a
+ * peer are, and the gossip of every exchange is passed on as it would be in its frames.
+ * The routing state is kept per peer, the store and the round trip times and suspicions are shared.
+ */
+public class InMemoryTransport implements Transport {
+
+    private final Set<String> up = ConcurrentHashMap.newKeySet();
+    // Every peer would have its own handler threads, sharing a bounded pool would have their lookups wait on each other
+    private final ExecutorService handlers = ThreadPools.newTaskPool();
+    private final Executor network;
+
+    public InMemoryTransport(long latencyMs) {
+
+        this.network = CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void start(SocketAddress peer) {
+
+        up.add(key(peer));
+    }
+
+    /**
+     * The peer stops answering, the requests already being handled by it still complete
+     */
+    public void stop(SocketAddress peer) {
+
+        up.remove(key(peer));
+    }
+
+    public boolean isUp(SocketAddress peer) {
+
+        return up.contains(key(peer));
+    }
+
+    @Override
+    public CompletableFuture<Response> exchange(Request request, SocketAddress destination) {
+
+        // Refused after the latency, as a connection would be
+        if (!this.isUp(destination))
+            return CompletableFuture.supplyAsync(() -> null, network);
+
+        final Chord sender = Chord.current();
+        final List<SocketAddress> requestGossip = Chord.gossipDigest(sender);
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (!requestGossip.isEmpty()) {
+                FailureDetector.heartbeat(requestGossip.get(0));
+                FreeSpace.record(requestGossip.get(0), FreeSpace.local());
+            }
+            Chord.learn(requestGossip, destination);
+            return null;
+        }, network).thenApplyAsync(v -> this.isUp(destination) ? this.handle(request) : null, handlers).thenApplyAsync(response -> {
+            if (response == null)
+                return null;
+
+            final List<SocketAddress> responseGossip = Chord.gossipDigest(Chord.getNode(request.getTarget()));
+            if (!responseGossip.isEmpty()) {
+                FailureDetector.heartbeat(responseGossip.get(0));
+                FreeSpace.record(responseGossip.get(0), FreeSpace.local());
+            }
+            if (sender != null)
+                Chord.learn(responseGossip, sender.getSelf());
+            return response;
+        }, network);
+    }
+
+    private Response handle(Request request) {
+
+        try {
+            return MessageHandler.handle(request);
+        } catch (RuntimeException e) {
+            System.out.println("* Failed to handle " + request + " in memory.");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+
+        up.clear();
+        handlers.shutdownNow();
+    }
+
+    // Positions of the same peer share its address
+    private static String key(SocketAddress peer) {
+        return peer.getIp() + ":" + peer.getPort();
+    }
+}
@@ -6,16 +6,33 @@ import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.util.UUID;
 import java.util.concurrent.*;
 
+import com.feup.sdis.messages.Status;
+import com.feup.sdis.messages.responses.OverloadedResponse;
 import com.feup.sdis.messages.responses.Response;
+import com.feup.sdis.chord.Chord;
 import com.feup.sdis.chord.SocketAddress;
 import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.model.ChunkBody;
+import com.feup.sdis.peer.SerializationUtils.Frame;
 
 public class MessageHandler {
 
     private static final boolean DEBUG_MODE = false;
+    private static final int OVERLOAD_RETRIES = 4;
+    private static final int OVERLOAD_BACKOFF_MS = 50;
+    // Only runs socket completions, which never block, so it stays small without a bound.
+    // Always platform threads, the group parks one of them in epoll which would pin a virtual thread's carrier.
     private static final ExecutorService pool = Executors.newCachedThreadPool();
+    private static final ThreadPoolExecutor handlerPool = ThreadPools.newBoundedPool(Constants.MAX_HANDLER_THREADS,
+            Constants.MAX_QUEUED_REQUESTS);
+    // Deadline of the request being handled, inherited by the requests sent while handling it
+    private static final ThreadLocal<Long> handlingDeadline = new ThreadLocal<>();
+    // Set while a request is handled, a handler may block on the requests it sends
+    private static final ThreadLocal<Boolean> handling = new ThreadLocal<>();
+    private static volatile Transport transport;
     private static AsynchronousServerSocketChannel serverSocket;
     private static AsynchronousChannelGroup group;
     private static int port;
@@ -26,9 +43,33 @@ public class MessageHandler {
         MessageHandler.port = port;
     }
 
+    /**
+     * Replaces the sockets for every request sent from now on, before any is sent
+     */
+    public static void setTransport(Transport transport) {
+
+        MessageHandler.transport = transport;
+    }
+
+    private static Transport transport() {
+
+        if (transport == null) {
+            synchronized (MessageHandler.class) {
+                if (transport == null)
+                    transport = new SocketTransport();
+            }
+        }
+
+        return transport;
+    }
+
     public static void shutdown() {
         try {
-            group.shutdownNow();
+            if (transport != null)
+                transport.shutdown();
+            if (group != null)
+                group.shutdownNow();
+            handlerPool.shutdownNow();
             pool.shutdownNow();
         } catch (IOException e) {
             System.out.println("An unexpected error while closing the server socket.");
@@ -53,25 +94,8 @@ public class MessageHandler {
                     if (serverSocket.isOpen())
                         serverSocket.accept(null, this);
 
-                    if (socket != null && socket.isOpen()) {
-                        Request request = SerializationUtils.deserialize(socket);
-                        if (request == null) {
-                            System.out.println("* Request is null.");
-                            return;
-                        }
-
-                        Response response = request.handle();
-
-                        socket.write(SerializationUtils.serialize(response));
-
-                        try {
-                            socket.shutdownOutput();
-                            socket.close();
-                        } catch (IOException e) {
-                            // if(DEBUG_MODE )
-                            System.out.println("* Socket shutdown/close failed on MessageListener.");
-                        }
-                    }
+                    if (socket != null && socket.isOpen())
+                        serve(socket);
                 }
 
                 @Override
@@ -88,34 +112,129 @@ public class MessageHandler {
         }
     }
 
-    public static <T extends Response> T sendMessage(Request request, SocketAddress destination) {
-        try {
+    private static void serve(AsynchronousSocketChannel socket) {
 
-            if (destination == null)
-                return null;
-            AsynchronousSocketChannel socket = AsynchronousSocketChannel.open();
-            Future<Void> future = socket.connect(new InetSocketAddress(destination.getIp(), destination.getPort()));
-            future.get();
+        final Connection connection = new Connection(socket, null);
 
-            Future<Integer> writeResult = socket.write(SerializationUtils.serialize(request));
-            socket.shutdownOutput();
-            writeResult.get();
+        // Requests on the same connection are handled concurrently and answered as soon as each one is done
+        connection.startReading(frame -> {
+            try {
+                handlerPool.execute(() -> handle(connection, frame));
+            } catch (RejectedExecutionException e) {
+                // Refuse instead of queueing without bound, the sender backs off and tries again
+                if (DEBUG_MODE)
+                    System.out.println("* Refused " + frame.getMessage() + ", handler queue is full.");
 
-            if (DEBUG_MODE)
-                System.out.println("* OUT > " + request + " to " + destination.getIp() + ":" + destination.getPort());
+                final ChunkBody body = SerializationUtils.getBody(frame.getMessage());
+                if (body != null)
+                    body.discard();
 
-            T receivedMessage = SerializationUtils.deserialize(socket);
+                reply(connection, frame.getCorrelationID(), new OverloadedResponse(), ((Request) frame.getMessage()).getTarget());
+            }
+        });
+    }
 
-            if (DEBUG_MODE)
-                System.out.println("* IN  > " + (receivedMessage != null ? receivedMessage : "-------") + " from " + destination.getIp() + ":" + destination.getPort());
+    private static void handle(Connection connection, Frame frame) {
 
-            socket.shutdownInput();
-            socket.close();
+        final Request request = (Request) frame.getMessage();
 
-            return receivedMessage;
-        } catch (IOException ex) {
+        // The sender already gave up on it, so the answer would be dropped anyway
+        if (request.getDeadline() != 0 && request.getDeadline() <= System.currentTimeMillis()) {
             if (DEBUG_MODE)
-                System.out.println("* IOException on sendMessage.");
+                System.out.println("* Dropped " + request + ", its deadline expired while queued.");
+
+            final ChunkBody body = SerializationUtils.getBody(request);
+            if (body != null)
+                body.discard();
+            return;
+        }
+
+        final Response response;
+        try {
+            response = handle(request);
+        } catch (RuntimeException e) {
+            // The sender would otherwise wait forever, closing fails every exchange on the connection
+            System.out.println("* Failed to handle " + frame.getMessage() + " on MessageListener.");
+            e.printStackTrace();
+            connection.close();
+            return;
+        }
+
+        reply(connection, frame.getCorrelationID(), response, request.getTarget());
+    }
+
+    static Response handle(Request request) {
+
+        // A request handled inline from another one gives its state back once done
+        final Long previousDeadline = handlingDeadline.get();
+        final UUID previousNode = Chord.getHandlingNode();
+        final Boolean previousHandling = handling.get();
+
+        handlingDeadline.set(request.getDeadline() != 0 ? request.getDeadline() : null);
+        handling.set(true);
+        Chord.setHandlingNode(request.getTarget());
+        try {
+            return request.handle();
+        } finally {
+            handlingDeadline.set(previousDeadline);
+            handling.set(previousHandling);
+            Chord.setHandlingNode(previousNode);
+        }
+    }
+
+    /**
+     * Handles a request addressed to this peer without going through a loopback connection
+     */
+    static CompletableFuture<Response> handleLocally(Request request) {
+
+        // A handler that blocks on the answer would otherwise wait on tasks queued behind it in its own pool
+        if (Boolean.TRUE.equals(handling.get()))
+            return CompletableFuture.completedFuture(handleLocallyNow(request));
+
+        final CompletableFuture<Response> response = new CompletableFuture<>();
+        try {
+            // Still on the handler pool, the caller may be a socket completion that must not block
+            handlerPool.execute(() -> response.complete(handleLocallyNow(request)));
+        } catch (RejectedExecutionException e) {
+            response.complete(new OverloadedResponse());
+        }
+
+        return response;
+    }
+
+    private static Response handleLocallyNow(Request request) {
+
+        try {
+            return handle(request);
+        } catch (RuntimeException e) {
+            System.out.println("* Failed to handle " + request + " locally.");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The frame is serialized while the position that answered is the handling node, so the gossip it
+     * carries describes that position and not the default one
+     */
+    private static void reply(Connection connection, int correlationID, Response response, UUID target) {
+
+        final UUID previousNode = Chord.getHandlingNode();
+        Chord.setHandlingNode(target);
+        try {
+            connection.send(correlationID, response).exceptionally(e -> {
+                // if(DEBUG_MODE )
+                System.out.println("* Socket write failed on MessageListener.");
+                return null;
+            });
+        } finally {
+            Chord.setHandlingNode(previousNode);
+        }
+    }
+
+    public static <T extends Response> T sendMessage(Request request, SocketAddress destination) {
+        try {
+            return MessageHandler.<T>sendMessageAsync(request, destination).get();
         } catch (ExecutionException ex) {
             if (DEBUG_MODE)
                 System.out.println("* ExecutionException on sendMessage.");
@@ -127,4 +246,76 @@ public class MessageHandler {
         return null;
     }
 
+    /**
+     * Deadline for requests that don't have their own: the one of the request being handled by this
+     * thread, so that it holds across every hop, or the default timeout from now
+     */
+    public static long currentDeadline() {
+
+        final Long deadline = handlingDeadline.get();
+        return deadline != null ? deadline : System.currentTimeMillis() + Constants.REQUEST_TIMEOUT_MS;
+    }
+
+    /**
+     * Sends a request without holding a thread while waiting for the answer.
+     * Like sendMessage, completes with null if the destination couldn't be reached before the deadline.
+     */
+    public static <T extends Response> CompletableFuture<T> sendMessageAsync(Request request, SocketAddress destination) {
+
+        return sendMessageAsync(request, destination, 0);
+    }
+
+    private static <T extends Response> CompletableFuture<T> sendMessageAsync(Request request, SocketAddress destination, int attempt) {
+
+        if (destination == null)
+            return CompletableFuture.completedFuture(null);
+
+        // A request that doesn't inherit a deadline and goes over a connection gets it once it is written,
+        // see Connection.request
+        if (request.getDeadline() == 0 && (handlingDeadline.get() != null || Peer.isLocal(destination)))
+            request.setDeadline(currentDeadline());
+
+        final long timeout = request.getDeadline() == 0 ? Long.MAX_VALUE : request.getDeadline() - System.currentTimeMillis();
+        if (timeout <= 0) {
+            if (DEBUG_MODE)
+                System.out.println("* Deadline expired before sending " + request);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        request.setTarget(destination.getPeerID());
+
+        final CompletableFuture<Response> exchanged;
+        if (Peer.isLocal(destination)) {
+            if (DEBUG_MODE)
+                System.out.println("* LOCAL > " + request);
+
+            exchanged = handleLocally(request);
+        } else {
+            final long sentAt = System.nanoTime();
+            exchanged = transport().exchange(request, destination).thenApply(receivedMessage -> {
+                if (receivedMessage != null)
+                    RoundTripTimes.record(destination, System.nanoTime() - sentAt);
+                return receivedMessage;
+            });
+        }
+
+        final CompletableFuture<Response> bounded = timeout == Long.MAX_VALUE ? exchanged
+                : exchanged.completeOnTimeout(null, timeout, TimeUnit.MILLISECONDS);
+        return bounded.thenCompose(receivedMessage -> {
+            if (receivedMessage == null || receivedMessage.getStatus() != Status.OVERLOADED)
+                return CompletableFuture.completedFuture((T) receivedMessage);
+
+            if (attempt >= OVERLOAD_RETRIES) {
+                if (DEBUG_MODE)
+                    System.out.println("* " + destination + " is still overloaded, giving up on " + request);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Exponential backoff with jitter, so refused senders don't all come back at once
+            final long backoff = (OVERLOAD_BACKOFF_MS << attempt) + ThreadLocalRandom.current().nextInt(OVERLOAD_BACKOFF_MS);
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> MessageHandler.<T>sendMessageAsync(request, destination, attempt + 1));
+        });
+    }
+
 }
\ No newline at end of file
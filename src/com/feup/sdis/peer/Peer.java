@@ -36,6 +36,16 @@ public class Peer {
             return;
         }
 
+        if (Constants.ID_BITS < 2 || Constants.ID_BITS > 128) {
+            System.out.println("Identifier width must be between 2 and 128 bits");
+            return;
+        }
+
+        if (Constants.VIRTUAL_NODES < 1) {
+            System.out.println("A peer needs at least one virtual node");
+            return;
+        }
+
         String peerPort = args[0];
         String peerID = args[1];
         String accessPoint = args[2];
@@ -73,6 +83,8 @@ public class Peer {
             registry.rebind(accessPoint, stub);
 
             System.out.println("Starting Peer " + Constants.SENDER_ID);
+            if (ThreadPools.isVirtual())
+                System.out.println("Running blocking tasks on virtual threads");
             System.out.println("Peer " + Constants.SENDER_ID + " ready");
 
         } catch (RemoteException e) {
@@ -115,6 +127,21 @@ public class Peer {
 
         Chord.chordInstance.initThreads();
 
+        // The other positions of this peer join the ring through the first one
+        for (int i = 1; i < Constants.VIRTUAL_NODES; i++) {
+            final SocketAddress virtualNode = new SocketAddress(addressInfo.getIp(), port, peerID + Constants.idSeparation + i);
+            if (Chord.getNode(Chord.normalizeToSize(virtualNode.getPeerID(), Constants.ID_BITS)) != null) {
+                System.out.println("Virtual node " + i + " has the same ID as another one of this peer, skipping it");
+                continue;
+            }
+
+            try {
+                new Chord(virtualNode, addressInfo).initThreads();
+            } catch (Exception e) {
+                System.out.println("Virtual node " + i + ": " + e.getMessage());
+            }
+        }
+
         final ScheduledExecutorService periodicExecutor = Executors.newSingleThreadScheduledExecutor();
         Runnable t1 = () -> Store.instance().retryRequest();
         periodicExecutor.scheduleAtFixedRate(t1, 0, Constants.REQUEST_RETRY_INTERVAL_MS, TimeUnit.MILLISECONDS);
@@ -125,6 +152,14 @@ public class Peer {
         }));
     }
 
+    /**
+     * Whether the address is one of the positions of this peer on the ring
+     */
+    public static boolean isLocal(SocketAddress address) {
+        return address != null && addressInfo != null && address.getPort() == addressInfo.getPort()
+                && address.getIp().equals(addressInfo.getIp());
+    }
+
     private static void startMessageReceiver(int port) {
         messageReceiver = new Thread(() -> {
             MessageHandler messageListener = new MessageHandler(port);
@@ -0,0 +1,52 @@
+package com.feup.sdis.peer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.feup.sdis.chord.SocketAddress;
+
+/**
+ * Round trip times to the other peers, sampled from the requests sent to them. A sample also holds the time
+ * the other peer took to handle the request, so only the smallest recent one is kept: the cheap requests of
+ * stabilization keep it low and a lookup forwarded around the ring doesn't raise it.
+ */
+public class RoundTripTimes {
+
+    private static final long WINDOW_MS = 30000;
+    private static final Map<String, Sample> samples = new ConcurrentHashMap<>();
+
+    public static void record(SocketAddress destination, long nanos) {
+
+        final long now = System.currentTimeMillis();
+        samples.merge(key(destination), new Sample(nanos, now),
+                (old, added) -> added.nanos <= old.nanos || now - old.takenAt > WINDOW_MS ? added : old);
+    }
+
+    /**
+     * Round trip time to the peer in nanoseconds, or -1 if no request was sent to it yet
+     */
+    public static long get(SocketAddress destination) {
+
+        // Other positions of this peer are answered in process
+        if (Peer.isLocal(destination))
+            return 0;
+
+        final Sample sample = samples.get(key(destination));
+        return sample == null ? -1 : sample.nanos;
+    }
+
+    // Positions of the same peer share its connection, and so its round trip time
+    private static String key(SocketAddress destination) {
+        return destination.getIp() + ":" + destination.getPort();
+    }
+
+    private static class Sample {
+        private final long nanos;
+        private final long takenAt;
+
+        Sample(long nanos, long takenAt) {
+            this.nanos = nanos;
+            this.takenAt = takenAt;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.feup.sdis.peer;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Lets at most a fixed number of exchanges with a peer be in flight, the others start as those complete.
+ * Exchanges that haven't started haven't sent anything yet, so their deadlines don't run while they wait.
+ */
+public class SendWindow {
+
+    private final int size;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int inFlight = 0;
+
+    public SendWindow(int size) {
+        this.size = size;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> exchange) {
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Runnable start = () -> {
+            final CompletableFuture<T> started;
+            try {
+                started = exchange.get();
+            } catch (RuntimeException e) {
+                this.release();
+                result.completeExceptionally(e);
+                return;
+            }
+
+            started.whenComplete((value, e) -> {
+                this.release();
+                if (e != null)
+                    result.completeExceptionally(e);
+                else
+                    result.complete(value);
+            });
+        };
+
+        synchronized (this) {
+            if (inFlight >= size) {
+                waiting.add(start);
+                return result;
+            }
+            inFlight++;
+        }
+
+        start.run();
+        return result;
+    }
+
+    private void release() {
+
+        final Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null)
+                inFlight--;
+        }
+
+        // Started apart from the exchange that completed, one that completes at once would otherwise recurse
+        if (next != null)
+            CompletableFuture.runAsync(next);
+    }
+}
@@ -3,44 +3,178 @@ package com.feup.sdis.peer;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import com.feup.sdis.chord.Chord;
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.BodyMessage;
+import com.feup.sdis.messages.MessageCodec;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.model.ChunkBody;
+
+/**
+ * Messages are framed as a header with the message and body lengths, the correlation ID of the
+ * exchange, the time left until the deadline of a request and the ring position it is addressed to,
+ * followed by the message encoded by {@link MessageCodec}, the peers the sender gossips about and then
+ * by the raw chunk body of a {@link BodyMessage}, if any
+ */
 public class SerializationUtils {
-    private static final int messageSize = Constants.BLOCK_SIZE * 2;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Largest encoded message accepted, the lengths in a header are checked before anything is allocated for them
+    private static final int MAX_MESSAGE_SIZE = Constants.MEGABYTE;
+    private static final UUID NO_TARGET = new UUID(0, 0);
+
+    /**
+     * Completes with the next frame, or null if the channel was closed before one started
+     */
+    public static CompletableFuture<Frame> deserializeAsync(AsynchronousSocketChannel socket) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        return readAsync(socket, header).thenCompose(complete -> {
+            if (!complete) {
+                if (header.position() == 0)
+                    return CompletableFuture.completedFuture(null);
+                throw new CompletionException(new EOFException());
+            }
+
+            header.flip();
+            final int messageLength = header.getInt();
+            final int bodyLength = header.getInt();
+            final int correlationID = header.getInt();
+            final int remainingTime = header.getInt();
+            final UUID target = new UUID(header.getLong(), header.getLong());
+            if (messageLength < 0 || messageLength > MAX_MESSAGE_SIZE || bodyLength < 0 || bodyLength > Constants.BLOCK_SIZE)
+                throw new CompletionException(new StreamCorruptedException("Invalid frame lengths " + messageLength + "/" + bodyLength));
+
+            final ByteBuffer payload = ByteBuffer.allocate(messageLength);
+            return readAsync(socket, payload).thenCompose(payloadComplete -> {
+                if (!payloadComplete)
+                    throw new CompletionException(new EOFException());
+
+                final Object message;
+                final List<SocketAddress> gossip;
+                final int freeSpace;
+                try {
+                    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+                    message = MessageCodec.decode(in);
+                    gossip = in.available() > 0 ? MessageCodec.readAddresses(in) : Collections.emptyList();
+                    freeSpace = in.available() > 0 ? in.readInt() : -1;
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new CompletionException(e);
+                }
+
+                if (message instanceof Request && remainingTime > 0)
+                    ((Request) message).setDeadline(System.currentTimeMillis() + remainingTime);
+                if (message instanceof Request && !target.equals(NO_TARGET))
+                    ((Request) message).setTarget(target);
+
+                if (bodyLength == 0)
+                    return CompletableFuture.completedFuture(new Frame(correlationID, message, gossip, freeSpace));
+
+                if (!(message instanceof BodyMessage))
+                    throw new CompletionException(new StreamCorruptedException("Received a body for " + message));
+
+                final BodyMessage bodyMessage = (BodyMessage) message;
+                final Path destination;
+                try {
+                    destination = bodyMessage.getBodyDestination();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+
+                return readBodyAsync(socket, bodyLength, destination).thenApply(body -> {
+                    bodyMessage.setBody(body);
+                    return new Frame(correlationID, message, gossip, freeSpace);
+                });
+            });
+        });
+    }
+
+    private static CompletableFuture<ChunkBody> readBodyAsync(AsynchronousSocketChannel socket, int length, Path destination) {
+
+        if (destination == null) {
+            final ByteBuffer body = ByteBuffer.allocate(length);
+            return readAsync(socket, body).thenApply(complete -> {
+                if (!complete)
+                    throw new CompletionException(new EOFException());
+                return ChunkBody.of(body.flip());
+            });
+        }
 
-    public static <T> T deserialize(AsynchronousSocketChannel socket) {
-        byte[] data = new byte[messageSize];
-        int offset = 0;
+        final FileChannel file;
         try {
-            while (true) {
-                ByteBuffer buffer = ByteBuffer.allocate(messageSize);
-                Future<Integer> readResult = socket.read(buffer);
-                readResult.get();
-                buffer.flip();
-                int addingOffset = buffer.remaining();
-                if (addingOffset <= 0) {
-                    ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-                    ObjectInputStream in = new ObjectInputStream(inputStream);
-                    return (T) in.readObject();
+            file = FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final CompletableFuture<ChunkBody> future = new CompletableFuture<>();
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.min(STREAM_BUFFER_SIZE, length));
+        final int[] remaining = {length};
+
+        // Each read is written straight to the file, so the body is never held whole in memory
+        socket.read(buffer, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void attachment) {
+                try {
+                    if (read < 0)
+                        throw new EOFException();
+
+                    buffer.flip();
+                    remaining[0] -= buffer.remaining();
+                    while (buffer.hasRemaining())
+                        file.write(buffer);
+
+                    if (remaining[0] == 0) {
+                        file.close();
+                        future.complete(ChunkBody.temporary(destination, length));
+                        return;
+                    }
+
+                    buffer.clear().limit(Math.min(buffer.capacity(), remaining[0]));
+                    socket.read(buffer, null, this);
+                } catch (IOException e) {
+                    this.failed(e, null);
                 }
+            }
 
-                byte[] byteBuffer = new byte[addingOffset];
-                buffer.get(byteBuffer);
-                System.arraycopy(byteBuffer, 0, data, offset, addingOffset);
-                offset += addingOffset;
+            @Override
+            public void failed(Throwable throwable, Void attachment) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    System.out.println("Failed to close " + destination);
+                }
+                future.completeExceptionally(throwable);
             }
+        });
 
-        } catch (IOException | ClassNotFoundException | InterruptedException | ExecutionException e) {
-            System.out.println("Failed to deserialize object!");
-            return null;
-        }
+        return future;
     }
 
-    public static <T> ByteBuffer serialize(T obj) {
-        final ByteArrayOutputStream stream = new ByteArrayOutputStream(messageSize);
-        try (ObjectOutputStream out = new ObjectOutputStream(stream)) {
-            out.writeObject(obj);
+    /**
+     * Encodes the frame of a message, without its body
+     */
+    public static <T> ByteBuffer serialize(int correlationID, T obj) {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        try {
+            // Reserve the header, it is filled in once the payload size is known
+            stream.write(new byte[HEADER_SIZE]);
+            final DataOutputStream out = new DataOutputStream(stream);
+            MessageCodec.encode(obj, out);
+            MessageCodec.writeAddresses(out, Chord.gossipDigest());
+            out.writeInt(FreeSpace.local());
             out.flush();
         } catch (IOException e) {
             System.out.println("Failed to serialize object!");
@@ -48,6 +182,132 @@ public class SerializationUtils {
             return null;
         }
 
-        return ByteBuffer.wrap(stream.toByteArray());
+        final ChunkBody body = getBody(obj);
+        final ByteBuffer buffer = ByteBuffer.wrap(stream.toByteArray());
+        buffer.putInt(0, buffer.capacity() - HEADER_SIZE);
+        buffer.putInt(Integer.BYTES, body == null ? 0 : body.getLength());
+        buffer.putInt(2 * Integer.BYTES, correlationID);
+        buffer.putInt(3 * Integer.BYTES, obj instanceof Request ? ((Request) obj).getRemainingTime() : 0);
+
+        final UUID target = obj instanceof Request && ((Request) obj).getTarget() != null ? ((Request) obj).getTarget() : NO_TARGET;
+        buffer.putLong(4 * Integer.BYTES, target.getMostSignificantBits());
+        buffer.putLong(4 * Integer.BYTES + Long.BYTES, target.getLeastSignificantBits());
+        return buffer;
+    }
+
+    /**
+     * Rewrites the time left until the deadline of a serialized request, for a frame that waited to be written
+     */
+    public static void setRemainingTime(ByteBuffer frame, int remainingTime) {
+        frame.putInt(3 * Integer.BYTES, remainingTime);
+    }
+
+    public static ChunkBody getBody(Object obj) {
+        return obj instanceof BodyMessage ? ((BodyMessage) obj).getBody() : null;
+    }
+
+    /**
+     * Writes a serialized frame followed by the body of its message
+     */
+    public static CompletableFuture<Void> sendAsync(AsynchronousSocketChannel socket, ByteBuffer frame, ChunkBody body) {
+        final CompletableFuture<Void> frameWritten = writeAsync(socket, frame);
+
+        return body == null ? frameWritten : frameWritten.thenCompose(v -> body.writeToAsync(socket));
+    }
+
+    /**
+     * Completes when the buffer is full, with false if the channel reached end of stream first
+     */
+    public static CompletableFuture<Boolean> readAsync(AsynchronousSocketChannel socket, ByteBuffer buffer) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        if (!buffer.hasRemaining()) {
+            future.complete(true);
+            return future;
+        }
+
+        socket.read(buffer, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer read, Void attachment) {
+                if (read < 0)
+                    future.complete(false);
+                else if (buffer.hasRemaining())
+                    socket.read(buffer, null, this);
+                else
+                    future.complete(true);
+            }
+
+            @Override
+            public void failed(Throwable throwable, Void attachment) {
+                future.completeExceptionally(throwable);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * A single write may be partial, so keep writing until the whole buffer is on the channel
+     */
+    public static CompletableFuture<Void> writeAsync(AsynchronousSocketChannel socket, ByteBuffer buffer) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        if (!buffer.hasRemaining()) {
+            future.complete(null);
+            return future;
+        }
+
+        socket.write(buffer, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer written, Void attachment) {
+                if (buffer.hasRemaining())
+                    socket.write(buffer, null, this);
+                else
+                    future.complete(null);
+            }
+
+            @Override
+            public void failed(Throwable throwable, Void attachment) {
+                future.completeExceptionally(throwable);
+            }
+        });
+
+        return future;
+    }
+
+    public static class Frame {
+        private final int correlationID;
+        private final Object message;
+        private final List<SocketAddress> gossip;
+        private final int freeSpace;
+
+        Frame(int correlationID, Object message, List<SocketAddress> gossip, int freeSpace) {
+            this.correlationID = correlationID;
+            this.message = message;
+            this.gossip = gossip;
+            this.freeSpace = freeSpace;
+        }
+
+        public int getCorrelationID() {
+            return correlationID;
+        }
+
+        public Object getMessage() {
+            return message;
+        }
+
+        /**
+         * Peers the sender knows, itself first
+         */
+        public List<SocketAddress> getGossip() {
+            return gossip;
+        }
+
+        /**
+         * Disk space the sender has left, or -1 if it didn't say
+         */
+        public int getFreeSpace() {
+            return freeSpace;
+        }
     }
 }
@@ -0,0 +1,65 @@
+package com.feup.sdis.peer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.messages.responses.Response;
+
+/**
+ * Sends every request over the connection kept open to its destination
+ */
+public class SocketTransport implements Transport {
+
+    private static final boolean DEBUG_MODE = false;
+    private final ConnectionPool connectionPool = new ConnectionPool();
+
+    @Override
+    public CompletableFuture<Response> exchange(Request request, SocketAddress destination) {
+
+        return this.acquire(destination).thenCompose(connection -> {
+            final boolean reused = connection.isReused();
+            return exchange(request, connection).thenCompose(receivedMessage -> {
+                // An idle connection may have been closed by the other peer, so retry once on a fresh one
+                if (receivedMessage == null && reused)
+                    return this.acquire(destination).thenCompose(fresh -> exchange(request, fresh));
+
+                return CompletableFuture.completedFuture(receivedMessage);
+            });
+        }).exceptionally(ex -> {
+            if (DEBUG_MODE)
+                System.out.println("* Failed to reach " + destination + " on sendMessage: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * A request may only get its deadline once written, so opening the connection is bounded on its own
+     */
+    private CompletableFuture<Connection> acquire(SocketAddress destination) {
+
+        return connectionPool.acquire(destination).copy().orTimeout(Constants.REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static CompletableFuture<Response> exchange(Request request, Connection connection) {
+
+        final SocketAddress destination = connection.getDestination();
+
+        if (DEBUG_MODE)
+            System.out.println("* OUT > " + request + " to " + destination.getIp() + ":" + destination.getPort());
+
+        return connection.request(request).thenApply(receivedMessage -> {
+            if (DEBUG_MODE)
+                System.out.println("* IN  > " + (receivedMessage != null ? receivedMessage : "-------") + " from " + destination.getIp() + ":" + destination.getPort());
+
+            return (Response) receivedMessage;
+        });
+    }
+
+    @Override
+    public void shutdown() {
+
+        connectionPool.shutdown();
+    }
+}
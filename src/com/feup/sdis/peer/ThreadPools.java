@@ -0,0 +1,67 @@
+package com.feup.sdis.peer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the thread pools that run blocking work. Started with -Dsdis.virtualThreads=true on a JDK that
+ * has virtual threads, tasks get a virtual thread each instead of holding a platform thread while they
+ * wait on the network. Looked up reflectively so that the peer still builds and runs on older JDKs.
+ */
+public class ThreadPools {
+
+    private static final ThreadFactory virtualThreadFactory = Boolean.getBoolean("sdis.virtualThreads")
+            ? createVirtualThreadFactory() : null;
+
+    public static boolean isVirtual() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Unbounded pool for independent tasks, one virtual thread per task in virtual mode
+     */
+    public static ExecutorService newTaskPool() {
+        if (!isVirtual())
+            return Executors.newCachedThreadPool();
+
+        try {
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, virtualThreadFactory);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(virtualThreadFactory);
+        }
+    }
+
+    /**
+     * Pool with a fixed number of workers and a bounded queue, which rejects tasks once it is full.
+     * The bound is kept in virtual mode, it limits how much work is accepted and not how many threads exist.
+     */
+    public static ThreadPoolExecutor newBoundedPool(int threads, int queueSize) {
+        final ThreadPoolExecutor pool = isVirtual()
+                ? new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), virtualThreadFactory)
+                : new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public static ScheduledExecutorService newScheduledPool(int threads) {
+        return isVirtual() ? Executors.newScheduledThreadPool(threads, virtualThreadFactory)
+                : Executors.newScheduledThreadPool(threads);
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available on this JVM, using platform threads");
+            return null;
+        }
+    }
+}
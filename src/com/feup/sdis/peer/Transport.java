@@ -0,0 +1,21 @@
+package com.feup.sdis.peer;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.feup.sdis.chord.SocketAddress;
+import com.feup.sdis.messages.requests.Request;
+import com.feup.sdis.messages.responses.Response;
+
+/**
+ * Carries a request to another peer and brings its response back. Sockets are used unless another
+ * transport is installed in {@link MessageHandler}, like the in-memory one that runs a whole ring in one JVM.
+ */
+public interface Transport {
+
+    /**
+     * Completes with the response, or with null if the destination couldn't be reached
+     */
+    CompletableFuture<Response> exchange(Request request, SocketAddress destination);
+
+    void shutdown();
+}